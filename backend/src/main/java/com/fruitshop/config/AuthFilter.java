@@ -0,0 +1,85 @@
+package com.fruitshop.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fruitshop.dto.ApiResponse;
+import com.fruitshop.dto.TokenClaims;
+import com.fruitshop.service.AuditService;
+import com.fruitshop.service.TokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 访问令牌过滤器 - 只做 HMAC 验签和过期检查，不查数据库。
+ * 验证通过的声明放入请求属性 {@link #CLAIMS_ATTRIBUTE}，门店数据域由 {@link StoreAccessInterceptor} 在路由匹配后检查。
+ * 公开路径按容器解码、规范化后的路径判断，原始 URI 中的 ..、编码字符和 ; 参数不能把受保护接口伪装成公开路径
+ */
+public class AuthFilter extends OncePerRequestFilter {
+    
+    public static final String CLAIMS_ATTRIBUTE = "fruitshop.auth.claims";
+    
+    private static final String BEARER = "Bearer ";
+    private static final List<String> PUBLIC_PATHS = List.of("/auth/login", "/auth/register", "/auth/refresh", "/h2-console");
+    
+    private final TokenService tokenService;
+    private final ObjectMapper objectMapper;
+    private final boolean required;
+    
+    public AuthFilter(TokenService tokenService, ObjectMapper objectMapper, boolean required) {
+        this.tokenService = tokenService;
+        this.objectMapper = objectMapper;
+        this.required = required;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getPathInfo() != null
+                ? request.getServletPath() + request.getPathInfo() : request.getServletPath();
+        if ("OPTIONS".equals(request.getMethod()) || isPublic(path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(BEARER)) {
+            if (required) {
+                reject(response, HttpStatus.UNAUTHORIZED, "请先登录");
+                return;
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        TokenClaims claims;
+        try {
+            claims = tokenService.verify(header.substring(BEARER.length()).trim(), TokenService.ACCESS);
+        } catch (RuntimeException e) {
+            reject(response, HttpStatus.UNAUTHORIZED, e.getMessage());
+            return;
+        }
+        request.setAttribute(CLAIMS_ATTRIBUTE, claims);
+        request.setAttribute(AuditService.ACTOR_ATTRIBUTE, claims.getUsername());
+        chain.doFilter(request, response);
+    }
+    
+    private static boolean isPublic(String path) {
+        return PUBLIC_PATHS.stream().anyMatch(path::startsWith);
+    }
+    
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(message));
+    }
+}
@@ -2,6 +2,8 @@ package com.fruitshop.config;
 
 import com.fruitshop.entity.*;
 import com.fruitshop.repository.*;
+import com.fruitshop.service.ApprovalEngine;
+import com.fruitshop.service.PasswordHasher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -35,6 +37,7 @@ public class DataSeeder implements CommandLineRunner {
     private final AutomationRepository automationRepository;
     private final ChannelConfigRepository channelConfigRepository;
     private final AgingBucketRepository agingBucketRepository;
+    private final PasswordHasher passwordHasher;
     
     @Override
     public void run(String... args) {
@@ -81,7 +84,7 @@ public class DataSeeder implements CommandLineRunner {
         
         User owner = new User();
         owner.setUsername("admin");
-        owner.setPassword("admin123");
+        owner.setPassword(passwordHasher.hash("admin123"));
         owner.setName("管理员");
         owner.setRole(User.UserRole.ROLE_OWNER);
         owner.setEmail("admin@fruitshop.com");
@@ -90,7 +93,7 @@ public class DataSeeder implements CommandLineRunner {
         
         User manager = new User();
         manager.setUsername("manager");
-        manager.setPassword("manager123");
+        manager.setPassword(passwordHasher.hash("manager123"));
         manager.setName("店长张三");
         manager.setRole(User.UserRole.ROLE_MANAGER);
         manager.setEmail("manager@fruitshop.com");
@@ -99,7 +102,7 @@ public class DataSeeder implements CommandLineRunner {
         
         User cashier = new User();
         cashier.setUsername("cashier");
-        cashier.setPassword("cashier123");
+        cashier.setPassword(passwordHasher.hash("cashier123"));
         cashier.setName("收银员小李");
         cashier.setRole(User.UserRole.ROLE_CASHIER);
         cashier.setEmail("cashier@fruitshop.com");
@@ -111,23 +114,26 @@ public class DataSeeder implements CommandLineRunner {
         if (productRepository.count() > 0) return;
         
         productRepository.saveAll(Arrays.asList(
-            createProduct("apple", "苹果", "fruits", "进口红富士苹果"),
-            createProduct("banana", "香蕉", "fruits", "海南香蕉"),
-            createProduct("orange", "橙子", "fruits", "赣南脐橙"),
-            createProduct("grape", "葡萄", "fruits", "新疆无籽葡萄"),
-            createProduct("watermelon", "西瓜", "fruits", "麒麟西瓜"),
-            createProduct("mango", "芒果", "fruits", "海南芒果"),
-            createProduct("pear", "梨", "fruits", "砀山梨"),
-            createProduct("peach", "桃子", "fruits", "水蜜桃")
+            createProduct("apple", "苹果", "fruits", "进口红富士苹果", "6900001", "10.00"),
+            createProduct("banana", "香蕉", "fruits", "海南香蕉", "6900002", "6.00"),
+            createProduct("orange", "橙子", "fruits", "赣南脐橙", "6900003", "8.00"),
+            createProduct("grape", "葡萄", "fruits", "新疆无籽葡萄", "6900004", "20.00"),
+            createProduct("watermelon", "西瓜", "fruits", "麒麟西瓜", "6900005", "5.00"),
+            createProduct("mango", "芒果", "fruits", "海南芒果", "6900006", "25.00"),
+            createProduct("pear", "梨", "fruits", "砀山梨", "6900007", "7.00"),
+            createProduct("peach", "桃子", "fruits", "水蜜桃", "6900008", "13.00")
         ));
     }
     
-    private Product createProduct(String id, String name, String category, String desc) {
+    private Product createProduct(String id, String name, String category, String desc,
+                                  String barcode, String priceBase) {
         Product product = new Product();
         product.setId(id);
         product.setName(name);
         product.setCategory(category);
         product.setDescription(desc);
+        product.setBarcode(barcode);
+        product.setPriceBase(new BigDecimal(priceBase));
         product.setStatus("active");
         return product;
     }
@@ -232,19 +238,20 @@ public class DataSeeder implements CommandLineRunner {
         
         roleMatrixRepository.saveAll(Arrays.asList(
             createRole(User.UserRole.ROLE_OWNER, "店主", Arrays.asList(
-                "dashboard", "procurement", "sales", "inventory", "finance", "master", "system")),
+                "dashboard", "procurement", "sales", "inventory", "finance", "master", "system"), "all"),
             createRole(User.UserRole.ROLE_MANAGER, "店长", Arrays.asList(
-                "dashboard", "procurement", "sales", "inventory", "finance")),
+                "dashboard", "procurement", "sales", "inventory", "finance"), "store"),
             createRole(User.UserRole.ROLE_CASHIER, "收银员", Arrays.asList(
-                "dashboard", "sales"))
+                "dashboard", "sales"), "store")
         ));
     }
     
-    private RoleMatrix createRole(User.UserRole role, String label, List<String> permissions) {
+    private RoleMatrix createRole(User.UserRole role, String label, List<String> permissions, String dataDomain) {
         RoleMatrix matrix = new RoleMatrix();
         matrix.setRole(role);
         matrix.setLabel(label);
         matrix.setPermissions(permissions);
+        matrix.setDataDomains(List.of(dataDomain));
         return matrix;
     }
     
@@ -254,6 +261,7 @@ public class DataSeeder implements CommandLineRunner {
         ApprovalFlow flow = new ApprovalFlow();
         flow.setId("flow-purchase");
         flow.setName("采购审批流程");
+        flow.setDocumentType(ApprovalEngine.PURCHASE);
         flow.setTrigger("采购金额超过5000元");
         flow.setEnabled(true);
         
@@ -335,20 +343,20 @@ public class DataSeeder implements CommandLineRunner {
         if (agingBucketRepository.count() > 0) return;
         
         agingBucketRepository.saveAll(Arrays.asList(
-            createAgingBucket("aging-current", "当期", 0, 30, new BigDecimal("125000")),
-            createAgingBucket("aging-30", "31-60天", 31, 60, new BigDecimal("45000")),
-            createAgingBucket("aging-60", "61-90天", 61, 90, new BigDecimal("18000")),
-            createAgingBucket("aging-90", "90天以上", 91, 999, new BigDecimal("7500"))
+            createAgingBucket("aging-current", "当期", 0, 30),
+            createAgingBucket("aging-30", "31-60天", 31, 60),
+            createAgingBucket("aging-60", "61-90天", 61, 90),
+            createAgingBucket("aging-90", "90天以上", 91, 999)
         ));
     }
     
-    private AgingBucket createAgingBucket(String id, String label, int min, int max, BigDecimal amount) {
+    // 只定义账龄分段，金额由 AgingHistogram 按未结单据实时计算
+    private AgingBucket createAgingBucket(String id, String label, int min, int max) {
         AgingBucket bucket = new AgingBucket();
         bucket.setId(id);
         bucket.setLabel(label);
         bucket.setMinDays(min);
         bucket.setMaxDays(max);
-        bucket.setAmount(amount);
         return bucket;
     }
 }
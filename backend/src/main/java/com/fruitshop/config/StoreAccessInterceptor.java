@@ -0,0 +1,41 @@
+package com.fruitshop.config;
+
+import com.fruitshop.dto.TokenClaims;
+import com.fruitshop.exception.StoreAccessDeniedException;
+import com.fruitshop.service.PermissionEngine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * 门店数据域检查 - 路由匹配后读取解析出的 {storeId} 路径变量，要求令牌持有者的数据域覆盖该门店。
+ * 变量已经过解码并去掉了矩阵参数，与控制器拿到的门店一致，不能靠改写 URL 绕过。
+ * 按ID操作单据的接口没有门店变量，由服务取出单据后按 {@link PermissionEngine#storeAccess} 检查
+ */
+public class StoreAccessInterceptor implements HandlerInterceptor {
+    
+    private static final String STORE_VARIABLE = "storeId";
+    
+    private final PermissionEngine permissionEngine;
+    
+    public StoreAccessInterceptor(PermissionEngine permissionEngine) {
+        this.permissionEngine = permissionEngine;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String storeId = variables != null ? variables.get(STORE_VARIABLE) : null;
+        TokenClaims claims = (TokenClaims) request.getAttribute(AuthFilter.CLAIMS_ATTRIBUTE);
+        if (storeId != null && !permissionEngine.storeAccess(claims).test(storeId)) {
+            // 由全局异常处理返回 403
+            throw new StoreAccessDeniedException("无权访问该门店");
+        }
+        return true;
+    }
+}
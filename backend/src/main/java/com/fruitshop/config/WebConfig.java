@@ -1,18 +1,31 @@
 package com.fruitshop.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fruitshop.service.PermissionEngine;
+import com.fruitshop.service.TokenService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.Arrays;
 
 @Configuration
-public class WebConfig {
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
     
+    private final PermissionEngine permissionEngine;
+    
+    // CORS 必须先于鉴权执行，401/403 响应也要带上跨域头
     @Bean
-    public CorsFilter corsFilter() {
+    public FilterRegistrationBean<CorsFilter> corsFilter() {
         CorsConfiguration config = new CorsConfiguration();
         config.setAllowCredentials(true);
         config.setAllowedOriginPatterns(Arrays.asList("*"));
@@ -24,6 +37,23 @@ public class WebConfig {
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
         
-        return new CorsFilter(source);
+        FilterRegistrationBean<CorsFilter> registration = new FilterRegistrationBean<>(new CorsFilter(source));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+    
+    @Bean
+    public FilterRegistrationBean<AuthFilter> authFilter(TokenService tokenService, ObjectMapper objectMapper,
+                                                         @Value("${fruitshop.auth.required:true}") boolean required) {
+        FilterRegistrationBean<AuthFilter> registration =
+                new FilterRegistrationBean<>(new AuthFilter(tokenService, objectMapper, required));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+    
+    // 门店检查放在路由匹配之后，按解析出的路径变量判断
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new StoreAccessInterceptor(permissionEngine));
     }
 }
@@ -0,0 +1,51 @@
+package com.fruitshop.controller;
+
+import com.fruitshop.dto.ApiResponse;
+import com.fruitshop.dto.AuditLogPage;
+import com.fruitshop.dto.AuditMetrics;
+import com.fruitshop.dto.AuditQuery;
+import com.fruitshop.service.AuditArchive;
+import com.fruitshop.service.AuditService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/audit")
+@RequiredArgsConstructor
+public class AuditController {
+    
+    private final AuditService auditService;
+    private final AuditArchive auditArchive;
+    
+    @GetMapping("/logs")
+    public ResponseEntity<ApiResponse<AuditLogPage>> listLogs(AuditQuery query) {
+        try {
+            AuditLogPage page = auditService.listPage(query);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 立即归档超过保留期的日分区，平时由定时任务执行
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<ApiResponse<Integer>> archive() {
+        try {
+            int archived = auditArchive.compact();
+            return ResponseEntity.ok(ApiResponse.success(archived, "归档完成"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/metrics")
+    public ResponseEntity<ApiResponse<AuditMetrics>> getMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(auditService.metrics()));
+    }
+}
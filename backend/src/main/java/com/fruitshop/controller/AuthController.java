@@ -1,8 +1,11 @@
 package com.fruitshop.controller;
 
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.*;
+import com.fruitshop.exception.ServiceBusyException;
 import com.fruitshop.service.AuthService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,6 +21,8 @@ public class AuthController {
         try {
             LoginResponse response = authService.login(request);
             return ResponseEntity.ok(ApiResponse.success(response));
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -28,8 +33,28 @@ public class AuthController {
         try {
             RegisterResponse response = authService.register(request);
             return ResponseEntity.ok(ApiResponse.success(response, "注册成功"));
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
+    
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<LoginResponse>> refresh(@RequestBody RefreshRequest request) {
+        try {
+            LoginResponse response = authService.refresh(request.getRefreshToken());
+            return ResponseEntity.ok(ApiResponse.success(response));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/logout")
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims,
+            @RequestBody(required = false) RefreshRequest request) {
+        authService.logout(claims, request != null ? request.getRefreshToken() : null);
+        return ResponseEntity.ok(ApiResponse.success(null, "已退出登录"));
+    }
 }
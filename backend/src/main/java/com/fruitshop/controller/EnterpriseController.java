@@ -1,13 +1,34 @@
 package com.fruitshop.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.ApiResponse;
+import com.fruitshop.dto.CatalogMetrics;
 import com.fruitshop.dto.EnterpriseSnapshot;
+import com.fruitshop.dto.TokenClaims;
+import com.fruitshop.exception.StoreAccessDeniedException;
 import com.fruitshop.service.EnterpriseService;
+import com.fruitshop.service.PermissionEngine;
+import com.fruitshop.service.ProductCatalog;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/enterprise")
@@ -15,10 +36,70 @@ import org.springframework.web.bind.annotation.RestController;
 public class EnterpriseController {
     
     private final EnterpriseService enterpriseService;
+    private final ProductCatalog productCatalog;
+    private final ObjectMapper objectMapper;
+    private final PermissionEngine permissionEngine;
     
+    /**
+     * 响应结构与 ApiResponse 一致，data 中的分区按查询完成顺序逐个写出，同时在途的分区数受 sections-in-flight 限制。
+     * 快照包含全部门店的数据，要求数据域覆盖全部门店
+     */
     @GetMapping("/snapshot")
-    public ResponseEntity<ApiResponse<EnterpriseSnapshot>> getSnapshot() {
-        EnterpriseSnapshot snapshot = enterpriseService.getSnapshot();
-        return ResponseEntity.ok(ApiResponse.success(snapshot));
+    public ResponseEntity<StreamingResponseBody> getSnapshot(
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) List<String> sections,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims,
+            WebRequest request) {
+        if (claims != null && !permissionEngine.canAccessAllStores(claims)) {
+            throw new StoreAccessDeniedException("无权访问全部门店的数据");
+        }
+        // 未知分区名抛出异常，由全局异常处理返回 400
+        List<String> names = enterpriseService.resolveSections(sections);
+        
+        StreamingResponseBody body = out -> writeSnapshot(out, since, names);
+        // 有分区处于降级状态时快照可能不完整，不发 ETag、不返回 304，也不允许缓存
+        if (enterpriseService.isDegraded(names)) {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body);
+        }
+        // ETag 由所请求分区的变更版本和失败纪元组成，客户端数据已是最新时直接返回 304；checkNotModified 会写入 ETag 响应头。
+        // 响应头先于数据写出，写出过程中才失败的快照无法撤回 ETag，失败纪元随之加一，这个 ETag 下次就不再匹配
+        if (request.checkNotModified(etag(enterpriseService.currentVersion(names), enterpriseService.failureEpoch()))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+    
+    @GetMapping("/catalog/metrics")
+    public ResponseEntity<ApiResponse<CatalogMetrics>> getCatalogMetrics() {
+        return ResponseEntity.ok(ApiResponse.success(productCatalog.metrics()));
+    }
+    
+    private void writeSnapshot(OutputStream out, Long since, List<String> names) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("data");
+            EnterpriseSnapshot snapshot = enterpriseService.writeSnapshot(since, names, (section, rows) -> {
+                generator.writeFieldName(section);
+                generator.writeObject(rows);
+                generator.flush();
+            });
+            for (Iterator<Map.Entry<String, JsonNode>> it = objectMapper.valueToTree(snapshot).fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = it.next();
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeNullField("message");
+            generator.writeEndObject();
+        }
+    }
+    
+    private static String etag(long version, long failureEpoch) {
+        return "\"" + version + "-" + failureEpoch + "\"";
     }
 }
@@ -1,10 +1,14 @@
 package com.fruitshop.controller;
 
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.*;
 import com.fruitshop.entity.Adjustment;
 import com.fruitshop.entity.Inventory;
+import com.fruitshop.exception.StoreAccessDeniedException;
 import com.fruitshop.service.InventoryService;
+import com.fruitshop.service.PermissionEngine;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +19,7 @@ import java.util.List;
 public class InventoryController {
     
     private final InventoryService inventoryService;
+    private final PermissionEngine permissionEngine;
     
     @GetMapping("/stores/{storeId}/inventory")
     public ResponseEntity<ApiResponse<List<Inventory>>> listInventory(@PathVariable String storeId) {
@@ -25,10 +30,14 @@ public class InventoryController {
     @PatchMapping("/inventory/{id}/reorder-level")
     public ResponseEntity<ApiResponse<Inventory>> updateReorderLevel(
             @PathVariable String id,
-            @RequestBody ReorderLevelRequest request) {
+            @RequestBody ReorderLevelRequest request,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
         try {
-            Inventory inventory = inventoryService.updateReorderLevel(id, request.getLevel());
+            Inventory inventory = inventoryService.updateReorderLevel(id, request.getLevel(),
+                    permissionEngine.storeAccess(claims));
             return ResponseEntity.ok(ApiResponse.success(inventory, "预警线更新成功"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -37,10 +46,13 @@ public class InventoryController {
     @PostMapping("/inventory/{id}/adjustments")
     public ResponseEntity<ApiResponse<Adjustment>> createAdjustment(
             @PathVariable String id,
-            @RequestBody AdjustmentRequest request) {
+            @RequestBody AdjustmentRequest request,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
         try {
-            Adjustment adjustment = inventoryService.createAdjustment(id, request);
+            Adjustment adjustment = inventoryService.createAdjustment(id, request, permissionEngine.storeAccess(claims));
             return ResponseEntity.ok(ApiResponse.success(adjustment, "调整成功"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -1,12 +1,20 @@
 package com.fruitshop.controller;
 
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.*;
+import com.fruitshop.entity.AgingBucket;
 import com.fruitshop.entity.Invoice;
+import com.fruitshop.exception.StoreAccessDeniedException;
+import com.fruitshop.service.InvoiceReconciler;
 import com.fruitshop.service.InvoiceService;
+import com.fruitshop.service.PermissionEngine;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -14,6 +22,8 @@ import java.util.List;
 public class InvoiceController {
     
     private final InvoiceService invoiceService;
+    private final InvoiceReconciler invoiceReconciler;
+    private final PermissionEngine permissionEngine;
     
     @GetMapping("/stores/{storeId}/invoices")
     public ResponseEntity<ApiResponse<List<Invoice>>> listInvoices(@PathVariable String storeId) {
@@ -21,13 +31,45 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(invoices));
     }
     
+    @GetMapping("/stores/{storeId}/aging")
+    public ResponseEntity<ApiResponse<List<AgingBucket>>> getAging(@PathVariable String storeId) {
+        return ResponseEntity.ok(ApiResponse.success(invoiceService.aging(storeId)));
+    }
+    
+    /**
+     * 核对门店指定日期区间的销售单与待付发票，一致的发票标记为已匹配，返回差异报告
+     */
+    @PostMapping("/stores/{storeId}/invoices/reconcile")
+    public ResponseEntity<ApiResponse<ReconciliationReport>> reconcile(
+            @PathVariable String storeId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        ReconciliationReport report = invoiceReconciler.reconcile(storeId, from, to);
+        return ResponseEntity.ok(ApiResponse.success(report, "核对完成"));
+    }
+    
     @PatchMapping("/invoices/{id}")
     public ResponseEntity<ApiResponse<Invoice>> updateInvoiceStatus(
             @PathVariable String id,
-            @RequestBody StatusUpdateRequest request) {
+            @RequestBody StatusUpdateRequest request,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
         try {
-            Invoice invoice = invoiceService.updateStatus(id, request.getStatus());
+            Invoice invoice = invoiceService.updateStatus(id, request.getStatus(), permissionEngine.storeAccess(claims));
             return ResponseEntity.ok(ApiResponse.success(invoice, "发票状态更新成功"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/stores/{storeId}/invoices/status")
+    public ResponseEntity<ApiResponse<BulkStatusResponse>> updateInvoiceStatuses(
+            @PathVariable String storeId,
+            @RequestBody BulkStatusRequest request) {
+        try {
+            BulkStatusResponse response = invoiceService.updateStatusAll(storeId, request);
+            return ResponseEntity.ok(ApiResponse.success(response, "批量更新完成"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -1,9 +1,15 @@
 package com.fruitshop.controller;
 
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.ApiResponse;
+import com.fruitshop.dto.RechargeRequest;
+import com.fruitshop.dto.TokenClaims;
 import com.fruitshop.entity.Member;
+import com.fruitshop.entity.WalletEntry;
 import com.fruitshop.service.MemberService;
+import com.fruitshop.service.PermissionEngine;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +21,7 @@ import java.util.List;
 public class MemberController {
     
     private final MemberService memberService;
+    private final PermissionEngine permissionEngine;
     
     @GetMapping("/search")
     public ResponseEntity<ApiResponse<List<Member>>> search(@RequestParam String keyword) {
@@ -28,4 +35,33 @@ public class MemberController {
                 .map(member -> ResponseEntity.ok(ApiResponse.success(member)))
                 .orElse(ResponseEntity.notFound().build());
     }
+    
+    /**
+     * 余额流水同属资金数据，与充值一样需要 finance 权限
+     */
+    @GetMapping("/{id}/wallet")
+    public ResponseEntity<ApiResponse<List<WalletEntry>>> listWallet(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims,
+            @RequestParam(required = false) Integer limit) {
+        if (claims == null || !permissionEngine.allows(claims, "finance")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("无权查看余额流水"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(memberService.listWallet(id, limit)));
+    }
+    
+    /**
+     * 余额充值涉及资金，需要 finance 权限
+     */
+    @PostMapping("/{id}/recharge")
+    public ResponseEntity<ApiResponse<WalletEntry>> recharge(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims,
+            @RequestBody RechargeRequest request) {
+        if (claims == null || !permissionEngine.allows(claims, "finance")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("无权执行充值"));
+        }
+        WalletEntry entry = memberService.recharge(id, request.getAmount());
+        return ResponseEntity.ok(ApiResponse.success(entry, "充值成功"));
+    }
 }
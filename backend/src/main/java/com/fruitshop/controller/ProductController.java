@@ -0,0 +1,26 @@
+package com.fruitshop.controller;
+
+import com.fruitshop.dto.ApiResponse;
+import com.fruitshop.dto.BarcodeScan;
+import com.fruitshop.service.BarcodeIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/products")
+@RequiredArgsConstructor
+public class ProductController {
+    
+    private final BarcodeIndex barcodeIndex;
+    
+    /**
+     * POS 扫码：普通条码或秤打印的称重码，找不到对应商品时返回 404
+     */
+    @GetMapping("/barcode/{code}")
+    public ResponseEntity<ApiResponse<BarcodeScan>> scan(@PathVariable String code) {
+        return barcodeIndex.scan(code)
+                .map(scan -> ResponseEntity.ok(ApiResponse.success(scan)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -1,12 +1,20 @@
 package com.fruitshop.controller;
 
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.*;
 import com.fruitshop.entity.PurchaseOrder;
+import com.fruitshop.entity.User;
+import com.fruitshop.exception.ApprovalDeniedException;
+import com.fruitshop.exception.StoreAccessDeniedException;
+import com.fruitshop.service.PermissionEngine;
 import com.fruitshop.service.PurchaseService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -14,6 +22,7 @@ import java.util.List;
 public class PurchaseController {
     
     private final PurchaseService purchaseService;
+    private final PermissionEngine permissionEngine;
     
     @GetMapping("/stores/{storeId}/purchases")
     public ResponseEntity<ApiResponse<List<PurchaseOrder>>> listPurchases(@PathVariable String storeId) {
@@ -21,6 +30,37 @@ public class PurchaseController {
         return ResponseEntity.ok(ApiResponse.success(purchases));
     }
     
+    /**
+     * 列表页用的摘要分页，不含明细行；明细通过 GET /purchases/{id} 获取
+     */
+    @GetMapping("/stores/{storeId}/purchases/page")
+    public ResponseEntity<ApiResponse<PurchasePage>> listPurchasePage(
+            @PathVariable String storeId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            PurchasePage page = purchaseService.listPage(storeId, status, from, to, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/purchases/{id}")
+    public ResponseEntity<ApiResponse<PurchaseOrder>> getPurchase(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
+        // 无权访问单据所属门店时由全局异常处理返回 403
+        PurchaseOrder order = purchaseService.getDetail(id, permissionEngine.storeAccess(claims));
+        if (order == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ApiResponse.success(order));
+    }
+    
     @PostMapping("/stores/{storeId}/purchases")
     public ResponseEntity<ApiResponse<PurchaseOrder>> createPurchase(
             @PathVariable String storeId,
@@ -36,10 +76,93 @@ public class PurchaseController {
     @PatchMapping("/purchases/{id}")
     public ResponseEntity<ApiResponse<PurchaseOrder>> updatePurchaseStatus(
             @PathVariable String id,
-            @RequestBody StatusUpdateRequest request) {
+            @RequestBody StatusUpdateRequest request,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
         try {
-            PurchaseOrder order = purchaseService.updateStatus(id, request.getStatus());
+            PurchaseOrder order = purchaseService.updateStatus(id, request.getStatus(),
+                    permissionEngine.storeAccess(claims));
             return ResponseEntity.ok(ApiResponse.success(order, "状态更新成功"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 提交采购草稿（如自动补货生成的），按审批流进入审批或直接入库
+     */
+    @PostMapping("/purchases/{id}/submit")
+    public ResponseEntity<ApiResponse<PurchaseOrder>> submitPurchase(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
+        try {
+            PurchaseOrder order = purchaseService.submit(id, permissionEngine.storeAccess(claims));
+            return ResponseEntity.ok(ApiResponse.success(order, "采购单已提交"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/stores/{storeId}/purchases/status")
+    public ResponseEntity<ApiResponse<BulkStatusResponse>> updatePurchaseStatuses(
+            @PathVariable String storeId,
+            @RequestBody BulkStatusRequest request) {
+        try {
+            BulkStatusResponse response = purchaseService.updateStatusAll(storeId, request);
+            return ResponseEntity.ok(ApiResponse.success(response, "批量更新完成"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 当前用户角色的审批待办，只列出其可访问门店的采购单
+     */
+    @GetMapping("/purchases/approvals")
+    public ResponseEntity<ApiResponse<List<PurchaseOrder>>> listApprovals(
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
+        if (claims == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("请登录后查看审批待办"));
+        }
+        List<PurchaseOrder> orders = purchaseService.approvalInbox(User.UserRole.valueOf(claims.getRole()),
+                storeId -> permissionEngine.canAccessStore(claims, storeId));
+        return ResponseEntity.ok(ApiResponse.success(orders));
+    }
+    
+    @PostMapping("/purchases/{id}/approve")
+    public ResponseEntity<ApiResponse<PurchaseOrder>> approvePurchase(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
+        if (claims == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("请登录后审批"));
+        }
+        try {
+            PurchaseOrder order = purchaseService.approve(id, User.UserRole.valueOf(claims.getRole()),
+                    storeId -> permissionEngine.canAccessStore(claims, storeId));
+            return ResponseEntity.ok(ApiResponse.success(order, "审批通过"));
+        } catch (ApprovalDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/purchases/{id}/reject")
+    public ResponseEntity<ApiResponse<PurchaseOrder>> rejectPurchase(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
+        if (claims == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("请登录后审批"));
+        }
+        try {
+            PurchaseOrder order = purchaseService.reject(id, User.UserRole.valueOf(claims.getRole()),
+                    storeId -> permissionEngine.canAccessStore(claims, storeId));
+            return ResponseEntity.ok(ApiResponse.success(order, "已驳回"));
+        } catch (ApprovalDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
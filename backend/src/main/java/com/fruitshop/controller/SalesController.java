@@ -1,12 +1,24 @@
 package com.fruitshop.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fruitshop.config.AuthFilter;
 import com.fruitshop.dto.*;
 import com.fruitshop.entity.SalesOrder;
+import com.fruitshop.exception.StoreAccessDeniedException;
+import com.fruitshop.service.PermissionEngine;
 import com.fruitshop.service.SalesService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -14,6 +26,8 @@ import java.util.List;
 public class SalesController {
     
     private final SalesService salesService;
+    private final ObjectMapper objectMapper;
+    private final PermissionEngine permissionEngine;
     
     @GetMapping("/stores/{storeId}/sales")
     public ResponseEntity<ApiResponse<List<SalesOrder>>> listSales(@PathVariable String storeId) {
@@ -21,6 +35,43 @@ public class SalesController {
         return ResponseEntity.ok(ApiResponse.success(sales));
     }
     
+    @GetMapping("/stores/{storeId}/sales/page")
+    public ResponseEntity<ApiResponse<SalesPage>> listSalesPage(
+            @PathVariable String storeId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            SalesPage page = salesService.listPage(storeId, from, to, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * NDJSON 流式导出，每行一个销售单，边读游标边写响应
+     */
+    @GetMapping(value = "/stores/{storeId}/sales/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSales(
+            @PathVariable String storeId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+                salesService.streamByStore(storeId, from, to, order -> {
+                    try {
+                        writer.write(order);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+    
     @PostMapping("/stores/{storeId}/sales")
     public ResponseEntity<ApiResponse<SalesOrder>> createSale(
             @PathVariable String storeId,
@@ -33,11 +84,39 @@ public class SalesController {
         }
     }
     
+    @PostMapping("/stores/{storeId}/sales/batch")
+    public ResponseEntity<ApiResponse<SalesBatchResponse>> createSalesBatch(
+            @PathVariable String storeId,
+            @RequestBody List<SalesRequest> requests) {
+        try {
+            SalesBatchResponse response = salesService.createBatch(storeId, requests);
+            return ResponseEntity.ok(ApiResponse.success(response, "批量导入完成"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @PatchMapping("/sales/{id}/settle")
-    public ResponseEntity<ApiResponse<SalesOrder>> settleSale(@PathVariable String id) {
+    public ResponseEntity<ApiResponse<SalesOrder>> settleSale(
+            @PathVariable String id,
+            @RequestAttribute(name = AuthFilter.CLAIMS_ATTRIBUTE, required = false) TokenClaims claims) {
         try {
-            SalesOrder order = salesService.settle(id);
+            SalesOrder order = salesService.settle(id, permissionEngine.storeAccess(claims));
             return ResponseEntity.ok(ApiResponse.success(order, "结算成功"));
+        } catch (StoreAccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/stores/{storeId}/sales/settle")
+    public ResponseEntity<ApiResponse<BulkStatusResponse>> settleSales(
+            @PathVariable String storeId,
+            @RequestBody BulkStatusRequest request) {
+        try {
+            BulkStatusResponse response = salesService.settleAll(storeId, request);
+            return ResponseEntity.ok(ApiResponse.success(response, "批量结算完成"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
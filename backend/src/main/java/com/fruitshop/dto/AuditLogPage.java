@@ -0,0 +1,16 @@
+package com.fruitshop.dto;
+
+import com.fruitshop.entity.AuditLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditLogPage {
+    private List<AuditLog> items;
+    // 下一页游标，为 null 表示已到末页
+    private String nextCursor;
+}
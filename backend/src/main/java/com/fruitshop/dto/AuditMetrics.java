@@ -0,0 +1,23 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+
+@Data
+public class AuditMetrics {
+    private String overflowPolicy;
+    private int capacity;
+    // 缓冲区中等待写入的事件数
+    private int depth;
+    // 最早一条待写入事件已等待的毫秒数
+    private long lagMs;
+    
+    private long published;
+    private long written;
+    // 缓冲区满被丢弃、以及落盘失败丢失的事件数
+    private long dropped;
+    // 写入本地溢出文件、等待回放的事件数
+    private long spilled;
+    // 批量写库失败的事件数（失败后转入溢出文件）
+    private long failed;
+    private boolean spillPending;
+}
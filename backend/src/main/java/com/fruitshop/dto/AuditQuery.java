@@ -0,0 +1,22 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+import java.time.LocalDateTime;
+
+/**
+ * 审计日志查询条件，除时间范围外均为精确匹配，未传的条件不参与过滤
+ */
+@Data
+public class AuditQuery {
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private String actor;
+    private String action;
+    private String entity;
+    
+    private String cursor;
+    private Integer limit;
+}
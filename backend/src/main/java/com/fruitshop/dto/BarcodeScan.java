@@ -0,0 +1,16 @@
+package com.fruitshop.dto;
+
+import com.fruitshop.entity.Product;
+import lombok.Data;
+import java.math.BigDecimal;
+
+@Data
+public class BarcodeScan {
+    private String barcode;
+    private String productId;
+    private Product product;
+    // 以下仅称重码有值：秤上的 PLU 号、重量，以及按商品基准售价计算的金额
+    private Integer plu;
+    private BigDecimal weightKg;
+    private BigDecimal amount;
+}
@@ -0,0 +1,17 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * 批量状态变更请求 - 指定 ids，或者指定 from/to 日期区间（可选 channel、fromStatus）按条件筛选，二者只能选一种
+ */
+@Data
+public class BulkStatusRequest {
+    private List<String> ids;
+    private String from;
+    private String to;
+    private String channel;
+    private String fromStatus;
+    private String status;
+}
@@ -0,0 +1,25 @@
+package com.fruitshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkStatusResponse {
+    private String status;
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<Failure> failures = new ArrayList<>();
+    private long elapsedMs;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure {
+        private String id;
+        private String message;
+    }
+}
@@ -0,0 +1,18 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+
+@Data
+public class CatalogMetrics {
+    private int size;
+    private int maxSize;
+    private long ttlSeconds;
+    
+    private long hits;
+    private long misses;
+    // 回源查询次数，一次 getAll 的所有未命中合并为一次
+    private long loads;
+    // 因容量超限被淘汰的条目数（不含 TTL 过期）
+    private long evictions;
+    private double hitRate;
+}
@@ -4,19 +4,19 @@ import lombok.Data;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * 企业快照的元信息。各分区数据（products、partners 等）由控制器逐个流式写出，不在此对象中汇总
+ */
 @Data
 public class EnterpriseSnapshot {
-    private List<?> products;
-    private List<?> partners;
-    private List<?> roleMatrix;
-    private List<?> approvalFlows;
-    private List<?> integrations;
-    private List<?> automations;
-    private List<?> auditLogs;
-    private List<?> parameters;
-    private List<?> invoices;
-    private List<?> adjustments;
-    private List<?> channelConfigs;
-    private List<?> aging;
-    private List<?> users;
+    // 快照对应的变更版本，下次以 since=version 请求增量
+    private long version;
+    // false 表示增量：未出现的分区没有变化，分区内只含变化过的行
+    private boolean full = true;
+    // 增量模式下各分区已删除的行ID
+    private Map<String, List<String>> deleted;
+    
+    // 有分区查询失败或超时时为 true，失败分区名列在 failedSections 中
+    private boolean partial;
+    private List<String> failedSections;
 }
@@ -7,7 +7,11 @@ import java.util.List;
 
 @Data
 public class LoginResponse {
+    // 访问令牌，请求时放在 Authorization: Bearer 头中
     private String token;
+    private String refreshToken;
+    // 访问令牌有效期（秒），过期前用 refreshToken 换取新令牌
+    private long expiresIn;
     private UserDto user;
     private List<Store> stores;
     private List<String> permissions;
@@ -0,0 +1,15 @@
+package com.fruitshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchasePage {
+    private List<PurchaseSummary> items;
+    // 下一页游标，为 null 表示已到末页
+    private String nextCursor;
+}
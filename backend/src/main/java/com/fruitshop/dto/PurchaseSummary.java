@@ -0,0 +1,25 @@
+package com.fruitshop.dto;
+
+import com.fruitshop.entity.PurchaseOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 采购单列表摘要，行数和总成本由数据库聚合，不加载明细行
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseSummary {
+    private String id;
+    private String storeId;
+    private String supplierId;
+    private PurchaseOrder.PurchaseStatus status;
+    private LocalDate expectedDate;
+    private int paymentTermDays;
+    private long lineCount;
+    private BigDecimal totalCost;
+}
@@ -0,0 +1,9 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+@Data
+public class RechargeRequest {
+    private BigDecimal amount;
+}
@@ -0,0 +1,38 @@
+package com.fruitshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ReconciliationReport {
+    private String storeId;
+    private LocalDate from;
+    private LocalDate to;
+    private int rowsScanned;
+    private int matched;
+    private int discrepancyCount;
+    // 明细超过上限时只返回前面的部分，discrepancyCount 仍为总数
+    private boolean truncated;
+    private List<Discrepancy> discrepancies = new ArrayList<>();
+    private long elapsedMs;
+    
+    public enum DiscrepancyType {
+        AMOUNT_MISMATCH, STORE_MISMATCH, MISSING_INVOICE, MISSING_SALE
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Discrepancy {
+        private DiscrepancyType type;
+        private String salesOrderId;
+        private String invoiceId;
+        private BigDecimal salesAmount;
+        private BigDecimal invoiceAmount;
+    }
+}
@@ -0,0 +1,25 @@
+package com.fruitshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class SalesBatchResponse {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<RowResult> results = new ArrayList<>();
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowResult {
+        private int index;
+        private String id;
+        private boolean success;
+        private String message;
+    }
+}
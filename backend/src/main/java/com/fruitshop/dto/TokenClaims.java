@@ -0,0 +1,19 @@
+package com.fruitshop.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * 令牌中携带的声明，验签通过即可信任，鉴权时无需再查用户表
+ */
+@Data
+public class TokenClaims {
+    private String username;
+    private String role;
+    private List<String> storeIds;
+    // access 或 refresh
+    private String type;
+    private String tokenId;
+    // 过期时间（epoch 秒）
+    private long expiresAt;
+}
@@ -1,5 +1,6 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +12,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(SnapshotChangeListener.class)
 @Table(name = "adjustments")
 public class Adjustment {
     @Id
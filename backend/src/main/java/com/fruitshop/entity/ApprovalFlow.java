@@ -1,5 +1,7 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.ApprovalFlowListener;
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +13,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners({SnapshotChangeListener.class, ApprovalFlowListener.class})
 @Table(name = "approval_flows")
 public class ApprovalFlow {
     @Id
@@ -1,5 +1,6 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.ApprovalFlowListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,6 +11,7 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(ApprovalFlowListener.class)
 @Table(name = "approval_steps")
 public class ApprovalStep {
     @Id
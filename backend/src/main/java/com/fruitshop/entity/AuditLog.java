@@ -1,15 +1,25 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "audit_logs")
+@EntityListeners(SnapshotChangeListener.class)
+@Table(name = "audit_logs", indexes = {
+    // log_date 为按天划分的分区键，每个索引以它开头，查询只扫描时间范围内的日分区
+    @Index(name = "idx_audit_date_at", columnList = "log_date, at, id"),
+    @Index(name = "idx_audit_actor_date", columnList = "actor, log_date, at"),
+    @Index(name = "idx_audit_action_date", columnList = "action, log_date, at"),
+    @Index(name = "idx_audit_entity_date", columnList = "entity, log_date, at")
+})
 public class AuditLog {
     @Id
     private String id;
@@ -17,6 +27,7 @@ public class AuditLog {
     private String actor;
     private String action;
     private String entity;
-    private String at;
+    private LocalDateTime at;
+    private LocalDate logDate;
     private String ip;
 }
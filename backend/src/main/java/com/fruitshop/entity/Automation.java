@@ -1,5 +1,6 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +10,7 @@ import lombok.AllArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(SnapshotChangeListener.class)
 @Table(name = "automations")
 public class Automation {
     @Id
@@ -1,5 +1,6 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,6 +11,7 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(SnapshotChangeListener.class)
 @Table(name = "channel_configs")
 public class ChannelConfig {
     @Id
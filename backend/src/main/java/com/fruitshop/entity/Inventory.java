@@ -4,12 +4,14 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 import java.math.BigDecimal;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@DynamicUpdate
 @Table(name = "inventory")
 public class Inventory {
     @Id
@@ -22,4 +24,8 @@ public class Inventory {
     private BigDecimal unitCost = BigDecimal.ZERO;
     private BigDecimal reorderLevelKg = new BigDecimal("80");
     private BigDecimal unitPrice = BigDecimal.ZERO;
+    
+    // 乐观锁，仅保护整行保存路径（如预警线修改）；数量增减走条件更新，不递增版本
+    @Version
+    private Long version;
 }
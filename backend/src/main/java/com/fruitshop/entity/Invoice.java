@@ -1,5 +1,8 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.AgingListener;
+import com.fruitshop.service.InvoiceListener;
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,7 +14,12 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "invoices")
+@EntityListeners({SnapshotChangeListener.class, InvoiceListener.class, AgingListener.class})
+@Table(name = "invoices", indexes = {
+    @Index(name = "idx_invoice_status_due", columnList = "status, due_date"),
+    @Index(name = "idx_invoice_sales_order", columnList = "sales_order_id"),
+    @Index(name = "idx_invoice_store_due_id", columnList = "store_id, due_date, id")
+})
 public class Invoice {
     @Id
     private String id;
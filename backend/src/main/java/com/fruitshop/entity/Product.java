@@ -1,5 +1,7 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.ProductListener;
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,7 +14,10 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "products")
+@EntityListeners({SnapshotChangeListener.class, ProductListener.class})
+@Table(name = "products", indexes = {
+    @Index(name = "idx_product_barcode", columnList = "barcode")
+})
 public class Product {
     @Id
     private String id;
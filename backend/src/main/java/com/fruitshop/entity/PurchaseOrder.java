@@ -1,7 +1,9 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.AgingListener;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.BatchSize;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import java.math.BigDecimal;
@@ -14,7 +16,11 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "purchase_orders")
+@EntityListeners(AgingListener.class)
+@Table(name = "purchase_orders", indexes = {
+    @Index(name = "idx_purchase_store_expected_id", columnList = "store_id, expected_date, id"),
+    @Index(name = "idx_purchase_status", columnList = "status")
+})
 public class PurchaseOrder {
     @Id
     private String id;
@@ -28,16 +34,39 @@ public class PurchaseOrder {
     private LocalDate expectedDate;
     private int paymentTermDays = 7;
     
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    // 需要依次审批的角色，逗号分隔；不需要审批时为空
+    private String approvalChain;
+    // 下一个待审批步骤在审批链中的下标
+    private int approvalStep;
+    
+    // 明细行和时间线懒加载；列表页用 PurchaseSummary 投影，需要明细时一次按批取出多张单据的集合
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "purchase_order_id")
+    @BatchSize(size = 100)
     private List<PurchaseOrderLine> lines = new ArrayList<>();
     
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "purchase_order_id")
+    @BatchSize(size = 100)
     private List<TimelineEvent> timeline = new ArrayList<>();
     
     public enum PurchaseStatus {
-        PENDING, PAID
+        DRAFT, AWAITING_APPROVAL, PENDING, PAID, REJECTED
+    }
+    
+    /**
+     * 当前等待审批的角色，审批已完成或不需要审批时为 null
+     */
+    public User.UserRole currentApprover() {
+        return approverAt(approvalChain, approvalStep);
+    }
+    
+    public static User.UserRole approverAt(String approvalChain, int step) {
+        if (approvalChain == null || approvalChain.isEmpty()) {
+            return null;
+        }
+        String[] roles = approvalChain.split(",");
+        return step < roles.length ? User.UserRole.valueOf(roles[step]) : null;
     }
     
     public void addLine(PurchaseOrderLine line) {
@@ -10,7 +10,9 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "purchase_order_lines")
+@Table(name = "purchase_order_lines", indexes = {
+    @Index(name = "idx_purchase_line_product", columnList = "product_id")
+})
 public class PurchaseOrderLine {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -1,5 +1,7 @@
 package com.fruitshop.entity;
 
+import com.fruitshop.service.RoleMatrixListener;
+import com.fruitshop.service.SnapshotChangeListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +13,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners({SnapshotChangeListener.class, RoleMatrixListener.class})
 @Table(name = "role_matrix")
 public class RoleMatrix {
     @Id
@@ -28,4 +31,8 @@ public class RoleMatrix {
     @CollectionTable(name = "role_data_domains", joinColumns = @JoinColumn(name = "role"))
     @Column(name = "data_domain")
     private List<String> dataDomains = new ArrayList<>();
+    
+    // 只改权限或数据域集合时，有版本列才会递增版本并触发 @PostUpdate，权限引擎随之重新编译
+    @Version
+    private Long version;
 }
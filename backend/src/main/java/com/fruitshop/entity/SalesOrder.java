@@ -11,7 +11,10 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "sales_orders")
+@Table(name = "sales_orders", indexes = {
+    @Index(name = "idx_sales_store_date_id", columnList = "store_id, date, id"),
+    @Index(name = "idx_sales_customer", columnList = "customer_id")
+})
 public class SalesOrder {
     @Id
     private String id;
@@ -0,0 +1,39 @@
+package com.fruitshop.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.hibernate.annotations.Immutable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 会员钱包流水 - 余额和积分的每次变动追加一行，只增不改；amount 为带符号的变动量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Immutable
+@Table(name = "wallet_ledger", indexes = {
+    @Index(name = "idx_wallet_member_at", columnList = "member_id, at")
+})
+public class WalletEntry {
+    @Id
+    private String id;
+    
+    private String memberId;
+    
+    @Enumerated(EnumType.STRING)
+    private Account account;
+    
+    private BigDecimal amount;
+    private String reference;  // 关联单据，如销售单ID
+    private String reason;
+    private LocalDateTime at;
+    
+    public enum Account {
+        BALANCE, POINTS
+    }
+}
@@ -0,0 +1,11 @@
+package com.fruitshop.exception;
+
+/**
+ * 调用者不是单据当前步骤的审批人，或无权访问单据所属门店（HTTP 403）
+ */
+public class ApprovalDeniedException extends RuntimeException {
+    
+    public ApprovalDeniedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.fruitshop.exception;
+
+/**
+ * 服务暂时过载，请求被准入控制拒绝，客户端应稍后重试（HTTP 503）
+ */
+public class ServiceBusyException extends RuntimeException {
+    
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.fruitshop.exception;
+
+/**
+ * 令牌持有者的数据域不覆盖请求涉及的门店（HTTP 403）
+ */
+public class StoreAccessDeniedException extends RuntimeException {
+    
+    public StoreAccessDeniedException(String message) {
+        super(message);
+    }
+}
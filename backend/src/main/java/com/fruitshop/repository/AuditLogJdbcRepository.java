@@ -0,0 +1,135 @@
+package com.fruitshop.repository;
+
+import com.fruitshop.entity.AuditLog;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 审计日志 JDBC 访问 - 后台写线程的批量写入和按日分区的范围查询，绕过 JPA 持久化上下文
+ */
+@Repository
+@RequiredArgsConstructor
+public class AuditLogJdbcRepository {
+    
+    private static final String INSERT_SQL = "INSERT INTO audit_logs (id, actor, action, entity, at, log_date, ip) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SELECT_SQL = "SELECT id, actor, action, entity, at, log_date, ip FROM audit_logs "
+            + "WHERE log_date BETWEEN ? AND ? AND at >= ? AND at <= ?";
+    
+    private static final RowMapper<AuditLog> ROW_MAPPER = (rs, rowNum) -> new AuditLog(
+            rs.getString("id"),
+            rs.getString("actor"),
+            rs.getString("action"),
+            rs.getString("entity"),
+            rs.getObject("at", LocalDateTime.class),
+            rs.getObject("log_date", LocalDate.class),
+            rs.getString("ip"));
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public void insertAll(List<AuditLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), (ps, log) -> {
+            ps.setString(1, log.getId());
+            ps.setString(2, log.getActor());
+            ps.setString(3, log.getAction());
+            ps.setString(4, log.getEntity());
+            ps.setObject(5, log.getAt());
+            // 日分区键总是由时间推出
+            ps.setObject(6, log.getAt().toLocalDate());
+            ps.setString(7, log.getIp());
+        });
+    }
+    
+    public Set<String> findExistingIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM audit_logs WHERE id IN (" + placeholders + ")", String.class, ids.toArray()));
+    }
+    
+    /**
+     * 按 (at, id) 倒序的 keyset 分页。先用 log_date 限定日分区范围，再按时间和可选条件过滤，
+     * 各条件都有以 log_date 结尾前缀的索引可用。排序带上 log_date（由 at 决定，不改变顺序），
+     * 与索引列顺序一致，数据库沿索引倒序读够 limit 行即停，不必把整个日期范围排序
+     */
+    public List<AuditLog> findPage(LocalDateTime from, LocalDateTime to, String actor, String action, String entity,
+                                   LocalDateTime afterAt, String afterId, int limit) {
+        LocalDate lastDay = afterAt != null && afterAt.isBefore(to) ? afterAt.toLocalDate() : to.toLocalDate();
+        
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(from.toLocalDate());
+        args.add(lastDay);
+        args.add(from);
+        args.add(to);
+        if (actor != null) {
+            sql.append(" AND actor = ?");
+            args.add(actor);
+        }
+        if (action != null) {
+            sql.append(" AND action = ?");
+            args.add(action);
+        }
+        if (entity != null) {
+            sql.append(" AND entity = ?");
+            args.add(entity);
+        }
+        if (afterAt != null) {
+            sql.append(" AND (at < ? OR (at = ? AND id < ?))");
+            args.add(afterAt);
+            args.add(afterAt);
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY log_date DESC, at DESC, id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+    
+    /**
+     * 最近的 limit 条日志，沿 (log_date, at, id) 索引倒序读取
+     */
+    public List<AuditLog> findLatest(int limit) {
+        return jdbcTemplate.query("SELECT id, actor, action, entity, at, log_date, ip FROM audit_logs "
+                + "ORDER BY log_date DESC, at DESC, id DESC LIMIT ?", ROW_MAPPER, limit);
+    }
+    
+    public List<LocalDate> findDatesBefore(LocalDate date) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT log_date FROM audit_logs WHERE log_date < ? ORDER BY log_date",
+                LocalDate.class, date);
+    }
+    
+    /**
+     * 按时间顺序逐行回调某一天的全部日志，供归档写段文件
+     */
+    public void streamByDate(LocalDate date, Consumer<AuditLog> consumer) {
+        jdbcTemplate.query("SELECT id, actor, action, entity, at, log_date, ip FROM audit_logs "
+                + "WHERE log_date = ? ORDER BY at, id", rs -> {
+            consumer.accept(ROW_MAPPER.mapRow(rs, 0));
+        }, date);
+    }
+    
+    public void deleteByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE id IN (" + placeholders + ")", ids.toArray());
+    }
+}
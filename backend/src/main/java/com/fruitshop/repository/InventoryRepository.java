@@ -2,7 +2,11 @@ package com.fruitshop.repository;
 
 import com.fruitshop.entity.Inventory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,4 +14,36 @@ import java.util.Optional;
 public interface InventoryRepository extends JpaRepository<Inventory, String> {
     List<Inventory> findByStoreId(String storeId);
     Optional<Inventory> findByStoreIdAndFruit(String storeId, String fruit);
+    
+    // 以下条件更新均为单条 SQL，返回受影响行数；不递增 version，数量增减可交换，不与整行保存冲突
+    
+    @Modifying
+    @Query("UPDATE Inventory i SET i.onHandKg = CASE WHEN i.onHandKg > :qty THEN i.onHandKg - :qty ELSE 0 END "
+            + "WHERE i.storeId = :storeId AND i.fruit = :fruit")
+    int deductOnHand(@Param("storeId") String storeId, @Param("fruit") String fruit, @Param("qty") BigDecimal qty);
+    
+    @Modifying
+    @Query("UPDATE Inventory i SET i.onHandKg = CASE WHEN i.onHandKg + :delta > 0 THEN i.onHandKg + :delta ELSE 0 END "
+            + "WHERE i.id = :id")
+    int adjustOnHand(@Param("id") String id, @Param("delta") BigDecimal delta);
+    
+    // unitCost 必须写在 onHandKg 之前：MySQL 按从左到右使用已更新的值
+    @Modifying
+    @Query("UPDATE Inventory i SET "
+            + "i.unitCost = CASE WHEN i.onHandKg + :qty > 0 "
+            + "THEN (i.onHandKg * i.unitCost + :qty * :cost) / (i.onHandKg + :qty) ELSE i.unitCost END, "
+            + "i.onHandKg = i.onHandKg + :qty "
+            + "WHERE i.id = :id")
+    int receiveStock(@Param("id") String id, @Param("qty") BigDecimal qty, @Param("cost") BigDecimal cost);
+    
+    // write-behind 模式下 on_hand_kg 可能尚未包含账本里待回写的增减，加权平均改用调用方给出的账本数量，
+    // 数量仍在库中值上累加，待回写的增量随后照常叠加
+    @Modifying
+    @Query("UPDATE Inventory i SET "
+            + "i.unitCost = CASE WHEN :onHand + :qty > 0 "
+            + "THEN (:onHand * i.unitCost + :qty * :cost) / (:onHand + :qty) ELSE i.unitCost END, "
+            + "i.onHandKg = i.onHandKg + :qty "
+            + "WHERE i.id = :id")
+    int receiveStock(@Param("id") String id, @Param("qty") BigDecimal qty, @Param("cost") BigDecimal cost,
+                     @Param("onHand") BigDecimal onHand);
 }
@@ -0,0 +1,91 @@
+package com.fruitshop.repository;
+
+import com.fruitshop.entity.Invoice;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 发票 JDBC 访问 - 核对用的游标流式联查和按ID分块的批量状态更新，绕过 JPA 持久化上下文
+ */
+@Repository
+@RequiredArgsConstructor
+public class InvoiceJdbcRepository {
+    
+    // 以销售单为驱动表，按 (store_id, date) 索引取区间内的销售单，再按 sales_order_id 索引取对应发票
+    private static final String SALES_JOIN_SQL = "SELECT s.id, s.store_id, s.quantity_kg * s.unit_price, "
+            + "i.id, i.store_id, i.amount, i.status "
+            + "FROM sales_orders s LEFT JOIN invoices i ON i.sales_order_id = s.id "
+            + "WHERE s.store_id = ? AND s.date >= ? AND s.date <= ?";
+    
+    // 找不到销售单的待付发票没有销售日期，按到期日落在区间内取
+    private static final String ORPHAN_SQL = "SELECT i.id, i.sales_order_id, i.amount "
+            + "FROM invoices i LEFT JOIN sales_orders s ON s.id = i.sales_order_id "
+            + "WHERE i.store_id = ? AND i.status = ? AND i.due_date >= ? AND i.due_date <= ? AND s.id IS NULL";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${fruitshop.invoice.stream-fetch-size:500}")
+    private int streamFetchSize;
+    
+    /**
+     * 区间内每张销售单与其发票逐行回调；没有发票的销售单发票列为 NULL，一张销售单有多张发票时各占一行
+     */
+    public void streamSalesWithInvoices(String storeId, LocalDate from, LocalDate to, RowCallbackHandler handler) {
+        streaming().query(SALES_JOIN_SQL, handler, storeId, Date.valueOf(from), Date.valueOf(to));
+    }
+    
+    public void streamOrphanInvoices(String storeId, LocalDate from, LocalDate to, RowCallbackHandler handler) {
+        streaming().query(ORPHAN_SQL, handler, storeId, Invoice.InvoiceStatus.PENDING.name(),
+                Date.valueOf(from), Date.valueOf(to));
+    }
+    
+    /**
+     * 把处于 expected 状态的发票改为 status，一块ID一条 UPDATE（按主键 IN 定位）；返回实际改动的行数
+     */
+    public int updateStatus(List<String> ids, Invoice.InvoiceStatus expected, Invoice.InvoiceStatus status) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Object> args = new ArrayList<>(ids.size() + 2);
+        args.add(status.name());
+        args.addAll(ids);
+        args.add(expected.name());
+        return jdbcTemplate.update("UPDATE invoices SET status = ? WHERE id IN (" + placeholders + ") AND status = ?",
+                args.toArray());
+    }
+    
+    /**
+     * 把到期日早于 today 的待付发票改为 OVERDUE，返回实际改动的发票ID。
+     * 先用 SELECT ... FOR UPDATE 锁住仍满足条件的行，再按这些主键更新，返回的ID与改动的行一一对应
+     */
+    public List<String> markOverdue(List<String> ids, LocalDate today) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Object> args = new ArrayList<>(ids.size() + 2);
+        args.addAll(ids);
+        args.add(Invoice.InvoiceStatus.PENDING.name());
+        args.add(Date.valueOf(today));
+        List<String> due = jdbcTemplate.queryForList("SELECT id FROM invoices WHERE id IN (" + placeholders
+                + ") AND status = ? AND due_date < ? FOR UPDATE", String.class, args.toArray());
+        updateStatus(due, Invoice.InvoiceStatus.PENDING, Invoice.InvoiceStatus.OVERDUE);
+        return due;
+    }
+    
+    private JdbcTemplate streaming() {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(streamFetchSize);
+        return streaming;
+    }
+}
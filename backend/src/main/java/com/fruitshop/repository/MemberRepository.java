@@ -2,10 +2,32 @@ package com.fruitshop.repository;
 
 import com.fruitshop.entity.Member;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
 import java.util.List;
 
 @Repository
 public interface MemberRepository extends JpaRepository<Member, String> {
     List<Member> findByPhoneContainingOrNameContaining(String phone, String name);
+    
+    // 钱包变动均为单条条件 SQL，只锁定该会员一行；扣减在余额不足时不修改，返回0
+    
+    @Modifying
+    @Query("UPDATE Member m SET m.balance = m.balance - :amount WHERE m.id = :id AND m.balance >= :amount")
+    int debitBalance(@Param("id") String id, @Param("amount") BigDecimal amount);
+    
+    @Modifying
+    @Query("UPDATE Member m SET m.points = m.points - :amount WHERE m.id = :id AND m.points >= :amount")
+    int debitPoints(@Param("id") String id, @Param("amount") BigDecimal amount);
+    
+    @Modifying
+    @Query("UPDATE Member m SET m.balance = m.balance + :amount WHERE m.id = :id")
+    int creditBalance(@Param("id") String id, @Param("amount") BigDecimal amount);
+    
+    @Modifying
+    @Query("UPDATE Member m SET m.points = m.points + :amount WHERE m.id = :id")
+    int creditPoints(@Param("id") String id, @Param("amount") BigDecimal amount);
 }
@@ -1,9 +1,20 @@
 package com.fruitshop.repository;
 
 import com.fruitshop.entity.Product;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, String> {
+    // tags 为懒加载集合，在查询线程的事务结束前一并取出
+    @EntityGraph(attributePaths = "tags")
+    @Query("SELECT p FROM Product p")
+    List<Product> findAllWithTags();
+    
+    @EntityGraph(attributePaths = "tags")
+    List<Product> findByIdIn(Collection<String> ids);
 }
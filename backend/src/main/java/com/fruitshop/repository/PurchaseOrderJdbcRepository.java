@@ -0,0 +1,92 @@
+package com.fruitshop.repository;
+
+import com.fruitshop.dto.PurchaseSummary;
+import com.fruitshop.entity.PurchaseOrder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 采购单 JDBC 访问 - 列表摘要分两步取：先沿 (store_id, expected_date, id) 索引分页取出单据，
+ * 再只对这一页的单据聚合明细行，避免把整个门店的明细聚合完才截取一页
+ */
+@Repository
+@RequiredArgsConstructor
+public class PurchaseOrderJdbcRepository {
+    
+    private static final String SELECT_SQL = "SELECT id, store_id, supplier_id, status, expected_date, payment_term_days "
+            + "FROM purchase_orders WHERE store_id = ?";
+    
+    private static final RowMapper<PurchaseSummary> ROW_MAPPER = (rs, rowNum) -> new PurchaseSummary(
+            rs.getString("id"),
+            rs.getString("store_id"),
+            rs.getString("supplier_id"),
+            rs.getString("status") != null ? PurchaseOrder.PurchaseStatus.valueOf(rs.getString("status")) : null,
+            rs.getObject("expected_date", LocalDate.class),
+            rs.getInt("payment_term_days"),
+            0L,
+            BigDecimal.ZERO);
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * 按 (expectedDate, id) 倒序的 keyset 分页摘要，afterDate/afterId 为上一页最后一行。
+     * 只拼接实际给出的条件，门店固定后排序与索引顺序一致，数据库沿索引倒序读够 limit 行即停
+     */
+    public List<PurchaseSummary> findSummaryPage(String storeId, PurchaseOrder.PurchaseStatus status,
+                                                 LocalDate from, LocalDate to,
+                                                 LocalDate afterDate, String afterId, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(storeId);
+        if (status != null) {
+            sql.append(" AND status = ?");
+            args.add(status.name());
+        }
+        if (from != null) {
+            sql.append(" AND expected_date >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            sql.append(" AND expected_date <= ?");
+            args.add(to);
+        }
+        if (afterDate != null) {
+            sql.append(" AND (expected_date < ? OR (expected_date = ? AND id < ?))");
+            args.add(afterDate);
+            args.add(afterDate);
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY expected_date DESC, id DESC LIMIT ?");
+        args.add(limit);
+        List<PurchaseSummary> page = jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+        fillLineTotals(page);
+        return page;
+    }
+    
+    // 明细行按 purchase_order_id 只聚合本页的单据
+    private void fillLineTotals(List<PurchaseSummary> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(page.size(), "?"));
+        Map<String, PurchaseSummary> byId = new HashMap<>();
+        page.forEach(summary -> byId.put(summary.getId(), summary));
+        jdbcTemplate.query("SELECT purchase_order_id, COUNT(*), COALESCE(SUM(quantity_kg * unit_cost), 0) "
+                + "FROM purchase_order_lines WHERE purchase_order_id IN (" + placeholders + ") "
+                + "GROUP BY purchase_order_id", rs -> {
+            PurchaseSummary summary = byId.get(rs.getString(1));
+            summary.setLineCount(rs.getLong(2));
+            summary.setTotalCost(rs.getBigDecimal(3));
+        }, byId.keySet().toArray());
+    }
+}
@@ -1,11 +1,23 @@
 package com.fruitshop.repository;
 
 import com.fruitshop.entity.PurchaseOrder;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PurchaseOrderRepository extends JpaRepository<PurchaseOrder, String> {
     List<PurchaseOrder> findByStoreIdOrderByExpectedDateDesc(String storeId);
+    
+    // 审批时锁住单据，同一步骤被重复提交时后到的请求看到已前进的步骤
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<PurchaseOrder> findLockedById(String id);
+    
+    // 详情连同明细行一起取出，时间线再按批加载（两个 List 集合不能同时 join fetch）
+    @EntityGraph(attributePaths = "lines")
+    Optional<PurchaseOrder> findDetailById(String id);
 }
@@ -0,0 +1,97 @@
+package com.fruitshop.repository;
+
+import com.fruitshop.entity.PaymentMethod;
+import com.fruitshop.entity.SalesOrder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 销售单 JDBC 访问 - 批量写入和游标流式读取，绕过 JPA 持久化上下文
+ */
+@Repository
+@RequiredArgsConstructor
+public class SalesOrderJdbcRepository {
+    
+    private static final String INSERT_SQL = "INSERT INTO sales_orders "
+            + "(id, store_id, date, customer, customer_id, channel, fruit, quantity_kg, unit_price, payment_method, status) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SELECT_SQL = "SELECT id, store_id, date, customer, customer_id, channel, fruit, "
+            + "quantity_kg, unit_price, payment_method, status FROM sales_orders WHERE store_id = ?";
+    
+    private static final RowMapper<SalesOrder> ROW_MAPPER = (rs, rowNum) -> {
+        SalesOrder order = new SalesOrder();
+        order.setId(rs.getString("id"));
+        order.setStoreId(rs.getString("store_id"));
+        Date date = rs.getDate("date");
+        order.setDate(date != null ? date.toLocalDate() : null);
+        order.setCustomer(rs.getString("customer"));
+        order.setCustomerId(rs.getString("customer_id"));
+        order.setChannel(rs.getString("channel"));
+        order.setFruit(rs.getString("fruit"));
+        order.setQuantityKg(rs.getBigDecimal("quantity_kg"));
+        order.setUnitPrice(rs.getBigDecimal("unit_price"));
+        String paymentMethod = rs.getString("payment_method");
+        order.setPaymentMethod(paymentMethod != null ? PaymentMethod.valueOf(paymentMethod) : null);
+        String status = rs.getString("status");
+        order.setStatus(status != null ? SalesOrder.SalesStatus.valueOf(status) : null);
+        return order;
+    };
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${fruitshop.sales.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${fruitshop.sales.stream-fetch-size:500}")
+    private int streamFetchSize;
+    
+    public void insertAll(List<SalesOrder> orders) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, orders, batchSize, (ps, order) -> {
+            ps.setString(1, order.getId());
+            ps.setString(2, order.getStoreId());
+            ps.setDate(3, Date.valueOf(order.getDate()));
+            ps.setString(4, order.getCustomer());
+            ps.setString(5, order.getCustomerId());
+            ps.setString(6, order.getChannel());
+            ps.setString(7, order.getFruit());
+            ps.setBigDecimal(8, order.getQuantityKg());
+            ps.setBigDecimal(9, order.getUnitPrice());
+            ps.setString(10, order.getPaymentMethod().name());
+            ps.setString(11, order.getStatus().name());
+        });
+    }
+    
+    /**
+     * 按 (date, id) 倒序逐行回调，结果集以 fetch size 分批从游标读取，不整体装入内存
+     */
+    public void streamByStore(String storeId, LocalDate from, LocalDate to, Consumer<SalesOrder> consumer) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(storeId);
+        if (from != null) {
+            sql.append(" AND date >= ?");
+            args.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND date <= ?");
+            args.add(Date.valueOf(to));
+        }
+        sql.append(" ORDER BY date DESC, id DESC");
+        
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(streamFetchSize);
+        streaming.query(sql.toString(), rs -> {
+            consumer.accept(ROW_MAPPER.mapRow(rs, 0));
+        }, args.toArray());
+    }
+}
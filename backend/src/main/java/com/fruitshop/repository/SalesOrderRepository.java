@@ -1,11 +1,27 @@
 package com.fruitshop.repository;
 
 import com.fruitshop.entity.SalesOrder;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface SalesOrderRepository extends JpaRepository<SalesOrder, String> {
     List<SalesOrder> findByStoreIdOrderByDateDesc(String storeId);
+    
+    // 按 (date, id) 倒序的 keyset 分页，afterDate/afterId 为上一页最后一行
+    @Query("SELECT s FROM SalesOrder s WHERE s.storeId = :storeId "
+            + "AND (:from IS NULL OR s.date >= :from) AND (:to IS NULL OR s.date <= :to) "
+            + "AND (:afterDate IS NULL OR s.date < :afterDate OR (s.date = :afterDate AND s.id < :afterId)) "
+            + "ORDER BY s.date DESC, s.id DESC")
+    List<SalesOrder> findPageByStore(@Param("storeId") String storeId,
+                                     @Param("from") LocalDate from,
+                                     @Param("to") LocalDate to,
+                                     @Param("afterDate") LocalDate afterDate,
+                                     @Param("afterId") String afterId,
+                                     Pageable pageable);
 }
@@ -2,11 +2,24 @@ package com.fruitshop.repository;
 
 import com.fruitshop.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, String> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
+    
+    /**
+     * 仅当密码仍是 oldPassword 时替换，登录时升级旧密码用，避免覆盖同时发生的改密
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username AND u.password = :oldPassword")
+    int replacePassword(@Param("username") String username, @Param("oldPassword") String oldPassword,
+                        @Param("password") String password);
 }
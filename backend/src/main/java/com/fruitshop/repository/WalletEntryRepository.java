@@ -0,0 +1,12 @@
+package com.fruitshop.repository;
+
+import com.fruitshop.entity.WalletEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface WalletEntryRepository extends JpaRepository<WalletEntry, String> {
+    List<WalletEntry> findByMemberIdOrderByAtDesc(String memberId, Pageable pageable);
+}
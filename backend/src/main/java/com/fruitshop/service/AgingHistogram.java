@@ -0,0 +1,332 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.AgingBucket;
+import com.fruitshop.entity.Invoice;
+import com.fruitshop.entity.PurchaseOrder;
+import com.fruitshop.repository.AgingBucketRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 应收应付账龄 - 在内存中按门店和全公司维护未结金额在各账龄段的直方图，
+ * 发票、采购单状态变化时只增减这一张单据的金额，查询只读各段合计，与未结单据数量无关。
+ * 每个直方图另按到期日汇总金额，跨天时只需把恰好跨过各段下限的那几个到期日的金额移到下一段。
+ * 账龄按逾期天数计算（未到期计为0天），分段取自 aging_buckets 表
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgingHistogram {
+    
+    static final String SECTION = "aging";
+    
+    // 金额以分为单位，与 DECIMAL(12,2) 精度一致
+    private static final int SCALE = 2;
+    private static final int RECEIVABLE = 0;
+    private static final int PAYABLE = 1;
+    private static final Set<Invoice.InvoiceStatus> OUTSTANDING = EnumSet.of(
+            Invoice.InvoiceStatus.PENDING, Invoice.InvoiceStatus.MATCHED, Invoice.InvoiceStatus.OVERDUE);
+    
+    // 待付采购单的应付金额：明细数量 × 单价之和，到期日为预计到货日加账期
+    private static final String PURCHASE_SQL_PREFIX = "SELECT po.id, po.store_id, po.expected_date, "
+            + "po.payment_term_days, SUM(l.quantity_kg * l.unit_cost) FROM purchase_orders po "
+            + "JOIN purchase_order_lines l ON l.purchase_order_id = po.id WHERE ";
+    private static final String PURCHASE_SQL_SUFFIX = "po.status = ? AND po.expected_date IS NOT NULL "
+            + "GROUP BY po.id, po.store_id, po.expected_date, po.payment_term_days";
+    private static final String PURCHASE_AMOUNT_SQL = "SELECT COALESCE(SUM(quantity_kg * unit_cost), 0) "
+            + "FROM purchase_order_lines WHERE purchase_order_id = ?";
+    
+    private final AgingBucketRepository agingBucketRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SnapshotChangeLog changeLog;
+    
+    // 按 minDays 升序
+    private volatile List<AgingBucket> definitions = defaultDefinitions();
+    private final Map<String, Document> documents = new HashMap<>();
+    private final Map<String, Histogram> stores = new HashMap<>();
+    private Histogram company = new Histogram(definitions.size());
+    private LocalDate asOf = LocalDate.now();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        List<AgingBucket> configured = new ArrayList<>(agingBucketRepository.findAll());
+        configured.sort(Comparator.comparingInt(AgingBucket::getMinDays));
+        definitions = configured.isEmpty() ? defaultDefinitions() : configured;
+        documents.clear();
+        stores.clear();
+        company = new Histogram(definitions.size());
+        asOf = LocalDate.now();
+        
+        jdbcTemplate.query("SELECT id, store_id, due_date, amount FROM invoices "
+                + "WHERE status IN (?, ?, ?) AND due_date IS NOT NULL AND amount IS NOT NULL", rs -> {
+            add(invoiceKey(rs.getString(1)), new Document(rs.getString(2), RECEIVABLE,
+                    rs.getDate(3).toLocalDate(), toCents(rs.getBigDecimal(4))));
+        }, OUTSTANDING.stream().map(Enum::name).toArray());
+        jdbcTemplate.query(PURCHASE_SQL_PREFIX + PURCHASE_SQL_SUFFIX, rs -> {
+            add(purchaseKey(rs.getString(1)), purchaseDocument(rs));
+        }, PurchaseOrder.PurchaseStatus.PENDING.name());
+        
+        log.info("账龄直方图已重建，{} 张未结单据，{} 个门店", documents.size(), stores.size());
+        changeLog.recordAllAfterCommit(SECTION, bucketIds());
+    }
+    
+    /**
+     * 发票保存后按最新状态计入或移出应收，事务提交后生效
+     */
+    public void invoiceChanged(Invoice invoice) {
+        invoicesChanged(Collections.singletonList(invoice));
+    }
+    
+    public void invoicesChanged(Collection<Invoice> invoices) {
+        Map<String, Document> changes = new HashMap<>();
+        for (Invoice invoice : invoices) {
+            Document document = OUTSTANDING.contains(invoice.getStatus())
+                    && invoice.getDueDate() != null && invoice.getAmount() != null
+                    ? new Document(invoice.getStoreId(), RECEIVABLE, invoice.getDueDate(), toCents(invoice.getAmount()))
+                    : null;
+            changes.put(invoiceKey(invoice.getId()), document);
+        }
+        replaceAfterCommit(changes);
+    }
+    
+    /**
+     * 采购单保存后按最新状态计入或移出应付。金额在数据库中按明细行汇总，不触发明细集合的懒加载，
+     * 需在改动所在的事务内、明细行写入数据库之后调用
+     */
+    public void purchaseChanged(PurchaseOrder order) {
+        Document document = null;
+        if (order.getStatus() == PurchaseOrder.PurchaseStatus.PENDING && order.getExpectedDate() != null) {
+            BigDecimal amount = jdbcTemplate.queryForObject(PURCHASE_AMOUNT_SQL, BigDecimal.class, order.getId());
+            document = new Document(order.getStoreId(), PAYABLE,
+                    order.getExpectedDate().plusDays(order.getPaymentTermDays()), toCents(amount));
+        }
+        replaceAfterCommit(Collections.singletonMap(purchaseKey(order.getId()), document));
+    }
+    
+    /**
+     * 批量改状态后按数据库中的最新状态重算这些采购单，需在改动所在的事务内调用
+     */
+    public void purchasesChanged(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<String, Document> changes = new HashMap<>();
+        ids.forEach(id -> changes.put(purchaseKey(id), null));
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Object> args = new ArrayList<>(ids);
+        args.add(PurchaseOrder.PurchaseStatus.PENDING.name());
+        jdbcTemplate.query(PURCHASE_SQL_PREFIX + "po.id IN (" + placeholders + ") AND " + PURCHASE_SQL_SUFFIX, rs -> {
+            changes.put(purchaseKey(rs.getString(1)), purchaseDocument(rs));
+        }, args.toArray());
+        replaceAfterCommit(changes);
+    }
+    
+    public void invoiceRemoved(String id) {
+        replaceAfterCommit(Collections.singletonMap(invoiceKey(id), null));
+    }
+    
+    public void purchaseRemoved(String id) {
+        replaceAfterCommit(Collections.singletonMap(purchaseKey(id), null));
+    }
+    
+    @Scheduled(cron = "${fruitshop.aging.rollover-cron:0 0 0 * * *}")
+    public void rollover() {
+        boolean moved;
+        synchronized (this) {
+            moved = advance();
+        }
+        if (moved) {
+            changeLog.recordAllAfterCommit(SECTION, bucketIds());
+        }
+    }
+    
+    /**
+     * 指定门店的账龄；storeId 为 null 时返回全公司
+     */
+    public List<AgingBucket> buckets(String storeId) {
+        List<AgingBucket> rows = new ArrayList<>();
+        boolean moved;
+        synchronized (this) {
+            moved = advance();
+            Histogram histogram = storeId == null ? company : stores.get(storeId);
+            for (int i = 0; i < definitions.size(); i++) {
+                AgingBucket definition = definitions.get(i);
+                long receivables = histogram == null ? 0 : histogram.amounts[RECEIVABLE][i];
+                long payables = histogram == null ? 0 : histogram.amounts[PAYABLE][i];
+                rows.add(new AgingBucket(definition.getId(), definition.getLabel(), definition.getLabel(),
+                        definition.getMinDays(), definition.getMaxDays(), fromCents(receivables + payables),
+                        fromCents(receivables), fromCents(payables)));
+            }
+        }
+        if (moved) {
+            changeLog.recordAllAfterCommit(SECTION, bucketIds());
+        }
+        return rows;
+    }
+    
+    public List<AgingBucket> buckets(String storeId, Collection<String> bucketIds) {
+        return buckets(storeId).stream().filter(row -> bucketIds.contains(row.getId())).toList();
+    }
+    
+    // 注册顺序保证直方图先更新，再分配快照版本
+    private void replaceAfterCommit(Map<String, Document> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                changes.forEach(this::replace);
+            }
+        });
+        changeLog.recordAllAfterCommit(SECTION, bucketIds());
+    }
+    
+    private void replace(String key, Document document) {
+        advance();
+        Document previous = documents.remove(key);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        if (document != null) {
+            add(key, document);
+        }
+    }
+    
+    private void add(String key, Document document) {
+        documents.put(key, document);
+        apply(document, 1);
+    }
+    
+    private void apply(Document document, int sign) {
+        int bucket = bucketOf(ChronoUnit.DAYS.between(document.dueDate, asOf));
+        long cents = sign * document.cents;
+        company.add(document.kind, bucket, document.dueDate, cents);
+        stores.computeIfAbsent(document.storeId, key -> new Histogram(definitions.size()))
+                .add(document.kind, bucket, document.dueDate, cents);
+    }
+    
+    // 逐日推进到今天：某天到期的金额在逾期天数等于某段下限的那天移入该段
+    private boolean advance() {
+        LocalDate today = LocalDate.now();
+        boolean moved = false;
+        while (asOf.isBefore(today)) {
+            asOf = asOf.plusDays(1);
+            for (int i = 1; i < definitions.size(); i++) {
+                LocalDate crossing = asOf.minusDays(definitions.get(i).getMinDays());
+                moved |= company.shift(crossing, i);
+                for (Histogram histogram : stores.values()) {
+                    histogram.shift(crossing, i);
+                }
+            }
+        }
+        return moved;
+    }
+    
+    private static Document purchaseDocument(ResultSet rs) throws SQLException {
+        LocalDate dueDate = rs.getDate(3).toLocalDate().plusDays(rs.getInt(4));
+        return new Document(rs.getString(2), PAYABLE, dueDate, toCents(rs.getBigDecimal(5)));
+    }
+    
+    private int bucketOf(long overdueDays) {
+        int bucket = 0;
+        for (int i = 1; i < definitions.size(); i++) {
+            if (overdueDays >= definitions.get(i).getMinDays()) {
+                bucket = i;
+            }
+        }
+        return bucket;
+    }
+    
+    private List<String> bucketIds() {
+        return definitions.stream().map(AgingBucket::getId).toList();
+    }
+    
+    private static String invoiceKey(String id) {
+        return "invoice:" + id;
+    }
+    
+    private static String purchaseKey(String id) {
+        return "purchase:" + id;
+    }
+    
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+    
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+    
+    private static List<AgingBucket> defaultDefinitions() {
+        return List.of(
+                definition("aging-current", "当期", 0, 30),
+                definition("aging-30", "31-60天", 31, 60),
+                definition("aging-60", "61-90天", 61, 90),
+                definition("aging-90", "90天以上", 91, 999));
+    }
+    
+    private static AgingBucket definition(String id, String label, int minDays, int maxDays) {
+        AgingBucket bucket = new AgingBucket();
+        bucket.setId(id);
+        bucket.setLabel(label);
+        bucket.setMinDays(minDays);
+        bucket.setMaxDays(maxDays);
+        return bucket;
+    }
+    
+    private record Document(String storeId, int kind, LocalDate dueDate, long cents) {
+    }
+    
+    private static final class Histogram {
+        // [应收/应付][账龄段]
+        private final long[][] amounts;
+        // 到期日 -> [应收, 应付]
+        private final Map<LocalDate, long[]> byDueDate = new HashMap<>();
+        
+        private Histogram(int buckets) {
+            amounts = new long[2][buckets];
+        }
+        
+        private void add(int kind, int bucket, LocalDate dueDate, long cents) {
+            amounts[kind][bucket] += cents;
+            long[] due = byDueDate.computeIfAbsent(dueDate, key -> new long[2]);
+            due[kind] += cents;
+            if (due[RECEIVABLE] == 0 && due[PAYABLE] == 0) {
+                byDueDate.remove(dueDate);
+            }
+        }
+        
+        private boolean shift(LocalDate dueDate, int toBucket) {
+            long[] due = byDueDate.get(dueDate);
+            if (due == null) {
+                return false;
+            }
+            for (int kind = RECEIVABLE; kind <= PAYABLE; kind++) {
+                amounts[kind][toBucket - 1] -= due[kind];
+                amounts[kind][toBucket] += due[kind];
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Invoice;
+import com.fruitshop.entity.PurchaseOrder;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 发票和采购单的 JPA 监听器，把未结金额的变化同步到 {@link AgingHistogram}
+ */
+@Component
+@RequiredArgsConstructor
+public class AgingListener {
+    
+    private final ObjectProvider<AgingHistogram> agingHistogram;
+    
+    // 新建采购单经 merge 保存，回调时明细行尚未复制到受管实体，由 PurchaseService 保存后自行同步
+    @PostPersist
+    public void onPersist(Object entity) {
+        if (entity instanceof Invoice invoice) {
+            agingHistogram.getObject().invoiceChanged(invoice);
+        }
+    }
+    
+    @PostUpdate
+    public void onUpdate(Object entity) {
+        if (entity instanceof Invoice invoice) {
+            agingHistogram.getObject().invoiceChanged(invoice);
+        } else if (entity instanceof PurchaseOrder order) {
+            agingHistogram.getObject().purchaseChanged(order);
+        }
+    }
+    
+    @PostRemove
+    public void onRemove(Object entity) {
+        if (entity instanceof Invoice invoice) {
+            agingHistogram.getObject().invoiceRemoved(invoice.getId());
+        } else if (entity instanceof PurchaseOrder order) {
+            agingHistogram.getObject().purchaseRemoved(order.getId());
+        }
+    }
+}
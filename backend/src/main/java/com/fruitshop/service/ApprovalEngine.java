@@ -0,0 +1,129 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.ApprovalFlow;
+import com.fruitshop.entity.ApprovalStep;
+import com.fruitshop.entity.User;
+import com.fruitshop.repository.ApprovalFlowRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 审批引擎 - 把启用的审批流按单据类型编译成阈值表：同一类型所有步骤按阈值升序排列，
+ * 并预先算好"前 k 个步骤按审批顺序排列"的审批链。单据金额超过前 k 个阈值时需要这 k 步审批，
+ * 查找是一次二分，返回预先编好的不可变列表，不查库也不分配对象。
+ * 审批流或步骤变化后在事务提交时整表重新编译并整体替换
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApprovalEngine {
+    
+    public static final String PURCHASE = "purchase";
+    
+    private final ApprovalFlowRepository approvalFlowRepository;
+    
+    private volatile Map<String, Table> tables = Map.of();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reload() {
+        Map<String, List<ApprovalStep>> stepsByType = new HashMap<>();
+        for (ApprovalFlow flow : approvalFlowRepository.findAll()) {
+            if (!flow.isEnabled() || flow.getDocumentType() == null) {
+                continue;
+            }
+            for (ApprovalStep step : flow.getSteps()) {
+                if (step.getThreshold() == null || roleOf(step) == null) {
+                    log.warn("审批流 {} 的步骤 {} 缺少阈值或审批角色，已忽略", flow.getId(), step.getOrder());
+                    continue;
+                }
+                stepsByType.computeIfAbsent(normalize(flow.getDocumentType()), key -> new ArrayList<>()).add(step);
+            }
+        }
+        Map<String, Table> next = new HashMap<>();
+        stepsByType.forEach((type, steps) -> next.put(type, Table.compile(steps)));
+        tables = next;
+        log.info("审批流已编译，{} 种单据，{} 个步骤", next.size(),
+                stepsByType.values().stream().mapToInt(List::size).sum());
+    }
+    
+    /**
+     * 审批流在事务中修改时，提交后再重新编译；同一事务改多行只编译一次
+     */
+    public void reloadAfterCommit() {
+        TransactionCallbacks.afterCommitOnce(this, this::reload);
+    }
+    
+    /**
+     * 指定金额的单据需要依次经过的审批角色；不需要审批时返回空列表
+     */
+    public List<User.UserRole> chainFor(String documentType, BigDecimal amount) {
+        Table table = tables.get(documentType);
+        return table == null || amount == null ? List.of() : table.chainFor(amount);
+    }
+    
+    private static User.UserRole roleOf(ApprovalStep step) {
+        if (step.getApprover() != null) {
+            return step.getApprover();
+        }
+        if (step.getRole() == null) {
+            return null;
+        }
+        try {
+            return User.UserRole.valueOf(step.getRole().trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static String normalize(String documentType) {
+        return documentType.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 编译后的阈值表：thresholds 升序，chains[k] 是阈值最低的 k 个步骤按审批顺序排列的角色
+     */
+    private record Table(BigDecimal[] thresholds, List<List<User.UserRole>> chains) {
+        
+        static Table compile(List<ApprovalStep> steps) {
+            List<ApprovalStep> byThreshold = new ArrayList<>(steps);
+            byThreshold.sort(Comparator.comparing(ApprovalStep::getThreshold));
+            BigDecimal[] thresholds = new BigDecimal[byThreshold.size()];
+            List<List<User.UserRole>> chains = new ArrayList<>(byThreshold.size() + 1);
+            chains.add(List.of());
+            for (int k = 1; k <= byThreshold.size(); k++) {
+                thresholds[k - 1] = byThreshold.get(k - 1).getThreshold();
+                List<ApprovalStep> prefix = new ArrayList<>(byThreshold.subList(0, k));
+                prefix.sort(Comparator.comparingInt(ApprovalStep::getOrder)
+                        .thenComparing(ApprovalStep::getThreshold));
+                chains.add(prefix.stream().map(ApprovalEngine::roleOf).toList());
+            }
+            return new Table(thresholds, chains);
+        }
+        
+        // 金额严格超过的阈值个数
+        List<User.UserRole> chainFor(BigDecimal amount) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (thresholds[mid].compareTo(amount) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return chains.get(low);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.fruitshop.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 审批流和审批步骤的 JPA 监听器，提交后通知 {@link ApprovalEngine} 重新编译。
+ * 只改步骤阈值时审批流本身没有 UPDATE，所以两个实体都要挂上
+ */
+@Component
+@RequiredArgsConstructor
+public class ApprovalFlowListener {
+    
+    private final ObjectProvider<ApprovalEngine> approvalEngine;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        approvalEngine.getObject().reloadAfterCommit();
+    }
+}
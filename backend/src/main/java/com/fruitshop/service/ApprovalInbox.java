@@ -0,0 +1,75 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.PurchaseOrder;
+import com.fruitshop.entity.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 审批待办 - 按角色索引待审批的采购单ID（按进入待办的先后排列），以及每张单据当前等待的角色。
+ * 启动时从待审批的采购单重建，之后随创建、审批、驳回的事务提交增量更新
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApprovalInbox {
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final Map<User.UserRole, Set<String>> byRole = new EnumMap<>(User.UserRole.class);
+    private final Map<String, User.UserRole> waitingOn = new HashMap<>();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Map<String, User.UserRole> rows = new HashMap<>();
+        jdbcTemplate.query("SELECT id, approval_chain, approval_step FROM purchase_orders WHERE status = ?", rs -> {
+            User.UserRole role = PurchaseOrder.approverAt(rs.getString(2), rs.getInt(3));
+            if (role != null) {
+                rows.put(rs.getString(1), role);
+            }
+        }, "AWAITING_APPROVAL");
+        synchronized (this) {
+            byRole.clear();
+            waitingOn.clear();
+            rows.forEach(this::assign);
+        }
+        log.info("审批待办已重建，{} 张待审批采购单", rows.size());
+    }
+    
+    /**
+     * 角色的待办单据ID，先进入待办的在前
+     */
+    public synchronized List<String> pending(User.UserRole role) {
+        Set<String> ids = byRole.get(role);
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+    
+    /**
+     * 事务提交后把单据移到 role 的待办中；role 为 null 表示审批结束，移出待办
+     */
+    public void assignAfterCommit(String orderId, User.UserRole role) {
+        TransactionCallbacks.afterCommit(() -> assign(orderId, role));
+    }
+    
+    private synchronized void assign(String orderId, User.UserRole role) {
+        User.UserRole previous = role == null ? waitingOn.remove(orderId) : waitingOn.put(orderId, role);
+        if (previous != null) {
+            byRole.get(previous).remove(orderId);
+        }
+        if (role != null) {
+            byRole.computeIfAbsent(role, key -> new LinkedHashSet<>()).add(orderId);
+        }
+    }
+}
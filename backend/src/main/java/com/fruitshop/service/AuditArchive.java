@@ -0,0 +1,191 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.AuditLog;
+import com.fruitshop.repository.AuditLogJdbcRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * 审计日志冷数据归档 - 超过保留期的日分区压缩写入本地段文件（每天一个或多个，写后不变），
+ * 随后从 audit_logs 删除。查询时按日期只打开范围内的段文件，与数据库中的热数据合并返回
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AuditArchive {
+    
+    static final Comparator<AuditLog> NEWEST_FIRST =
+            Comparator.comparing(AuditLog::getAt).thenComparing(AuditLog::getId).reversed();
+    
+    private static final int DELETE_CHUNK = 500;
+    
+    private final AuditLogJdbcRepository auditLogJdbcRepository;
+    
+    @Value("${fruitshop.audit.archive.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${fruitshop.audit.archive.retention-days:90}")
+    private int retentionDays;
+    
+    @Value("${fruitshop.audit.archive.dir:data/audit-archive}")
+    private String dir;
+    
+    private final ConcurrentSkipListMap<LocalDate, List<AuditSegment>> segments = new ConcurrentSkipListMap<>();
+    private Path directory;
+    
+    @PostConstruct
+    public void load() throws IOException {
+        directory = Paths.get(dir).toAbsolutePath();
+        if (Files.notExists(directory)) {
+            return;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "audit-*.seg")) {
+            for (Path file : files) {
+                try {
+                    register(dateOf(file), AuditSegment.open(file));
+                    count++;
+                } catch (IOException | RuntimeException e) {
+                    log.error("审计段文件无法读取，已跳过: {}", file, e);
+                }
+            }
+        }
+        log.info("已加载审计归档段文件 {} 个", count);
+    }
+    
+    /**
+     * 把保留期之前的日分区逐天归档。段文件落盘后才删除数据库中的行；
+     * 中途失败时重跑会按ID跳过已在段文件中的行，不会重复归档
+     */
+    @Scheduled(cron = "${fruitshop.audit.archive.cron:0 30 3 * * *}")
+    public synchronized int compact() {
+        if (!enabled) {
+            return 0;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        int archived = 0;
+        for (LocalDate date : auditLogJdbcRepository.findDatesBefore(cutoff)) {
+            try {
+                archived += compact(date);
+            } catch (IOException | RuntimeException e) {
+                log.error("审计日志 {} 归档失败，下次重试", date, e);
+            }
+        }
+        if (archived > 0) {
+            log.info("审计日志归档完成，共 {} 条", archived);
+        }
+        return archived;
+    }
+    
+    /**
+     * 查询 [from, to] 内满足条件的归档日志，(at, id) 倒序，至多 limit 条。
+     * afterAt/afterId 为上一页最后一行，从新到旧逐天扫描，凑够条数即停止
+     */
+    public List<AuditLog> findPage(LocalDateTime from, LocalDateTime to, Predicate<AuditLog> filter,
+                                   LocalDateTime afterAt, String afterId, int limit) {
+        LocalDateTime upper = afterAt != null && afterAt.isBefore(to) ? afterAt : to;
+        List<AuditLog> result = new ArrayList<>();
+        if (upper.isBefore(from)) {
+            return result;
+        }
+        Map<LocalDate, List<AuditSegment>> range =
+                segments.subMap(from.toLocalDate(), true, upper.toLocalDate(), true).descendingMap();
+        for (List<AuditSegment> daySegments : range.values()) {
+            List<AuditLog> day = new ArrayList<>();
+            for (AuditSegment segment : daySegments) {
+                try {
+                    segment.scan(from, upper, filter, day::add);
+                } catch (IOException e) {
+                    throw new RuntimeException("审计归档读取失败: " + segment.path().getFileName(), e);
+                }
+            }
+            day.sort(NEWEST_FIRST);
+            for (AuditLog row : day) {
+                if (afterAt != null && !isBefore(row, afterAt, afterId)) {
+                    continue;
+                }
+                result.add(row);
+                if (result.size() == limit) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+    
+    private int compact(LocalDate date) throws IOException {
+        Set<String> archivedIds = new HashSet<>();
+        for (AuditSegment segment : segments.getOrDefault(date, List.of())) {
+            segment.forEach(row -> archivedIds.add(row.getId()));
+        }
+        
+        Files.createDirectories(directory);
+        Path target = nextPath(date);
+        List<String> ids = new ArrayList<>();
+        int written;
+        try (AuditSegment.Writer writer = AuditSegment.writer(target)) {
+            auditLogJdbcRepository.streamByDate(date, row -> {
+                ids.add(row.getId());
+                if (!archivedIds.contains(row.getId())) {
+                    writer.add(row);
+                }
+            });
+            written = writer.count();
+            if (written > 0) {
+                writer.commit();
+            }
+        }
+        if (written > 0) {
+            register(date, AuditSegment.open(target));
+        }
+        
+        for (int i = 0; i < ids.size(); i += DELETE_CHUNK) {
+            auditLogJdbcRepository.deleteByIds(ids.subList(i, Math.min(i + DELETE_CHUNK, ids.size())));
+        }
+        return written;
+    }
+    
+    private void register(LocalDate date, AuditSegment segment) {
+        segments.computeIfAbsent(date, key -> new CopyOnWriteArrayList<>()).add(segment);
+    }
+    
+    private Path nextPath(LocalDate date) {
+        for (int sequence = 1; ; sequence++) {
+            Path path = directory.resolve("audit-" + date + "-" + sequence + ".seg");
+            if (Files.notExists(path)) {
+                return path;
+            }
+        }
+    }
+    
+    // 文件名形如 audit-2025-11-20-1.seg
+    private static LocalDate dateOf(Path file) {
+        return LocalDate.parse(file.getFileName().toString().substring(6, 16));
+    }
+    
+    private static boolean isBefore(AuditLog row, LocalDateTime afterAt, String afterId) {
+        int compare = row.getAt().compareTo(afterAt);
+        return compare < 0 || (compare == 0 && row.getId().compareTo(afterId) < 0);
+    }
+}
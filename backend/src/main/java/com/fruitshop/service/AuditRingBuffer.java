@@ -0,0 +1,74 @@
+package com.fruitshop.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列（多生产者、单消费者）。生产者 CAS 抢占序号后写入槽位，
+ * 唯一的消费者线程按序号顺序取出并清空槽位，队列满时 offer 立即返回 false
+ */
+final class AuditRingBuffer<T> {
+    
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    // 下一个可抢占的序号
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个待消费的序号，只由消费者推进
+    private volatile long head;
+    
+    AuditRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+    
+    boolean offer(T item) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) sequence & mask, item);
+        return true;
+    }
+    
+    /**
+     * 仅限消费者线程调用。遇到已抢占但尚未写入的槽位时停止，剩余部分留到下次
+     */
+    int drainTo(List<T> target, int max) {
+        long sequence = head;
+        int count = 0;
+        while (count < max) {
+            int index = (int) sequence & mask;
+            T item = slots.get(index);
+            if (item == null) {
+                break;
+            }
+            // 先清空槽位再推进 head，生产者看到空位时槽位一定已释放
+            slots.lazySet(index, null);
+            target.add(item);
+            sequence++;
+            count++;
+            head = sequence;
+        }
+        return count;
+    }
+    
+    T peek() {
+        return slots.get((int) head & mask);
+    }
+    
+    int size() {
+        return (int) Math.max(tail.get() - head, 0);
+    }
+    
+    int capacity() {
+        return slots.length();
+    }
+}
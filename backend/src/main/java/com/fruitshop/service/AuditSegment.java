@@ -0,0 +1,298 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.AuditLog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 审计日志冷数据段文件，写入一次后不再修改。记录分块 Deflate 压缩，文件尾部是稀疏时间索引（每块一条）。
+ * 读取时整个文件只读内存映射，按索引跳过时间范围外的块，块数据直接从映射区解压，不先拷贝到堆上。
+ * <p>
+ * 布局：MAGIC | 块... | 索引（每块 minAt maxAt offset length rawLength records）| indexOffset blockCount MAGIC
+ */
+final class AuditSegment {
+    
+    private static final byte[] MAGIC = "FSAUDSG1".getBytes(StandardCharsets.US_ASCII);
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 8 + 4 + 4 + 4;
+    private static final int FOOTER_BYTES = 8 + 4 + MAGIC.length;
+    private static final int RECORDS_PER_BLOCK = 512;
+    
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final long[] minAt;
+    private final long[] maxAt;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+    private final int[] records;
+    
+    private AuditSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        int size = buffer.capacity();
+        if (size < MAGIC.length + FOOTER_BYTES || !hasMagic(buffer, 0) || !hasMagic(buffer, size - MAGIC.length)) {
+            throw new IOException("不是有效的审计段文件: " + path);
+        }
+        int indexOffset = (int) buffer.getLong(size - FOOTER_BYTES);
+        int blocks = buffer.getInt(size - FOOTER_BYTES + 8);
+        minAt = new long[blocks];
+        maxAt = new long[blocks];
+        offsets = new int[blocks];
+        lengths = new int[blocks];
+        rawLengths = new int[blocks];
+        records = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            int position = indexOffset + i * INDEX_ENTRY_BYTES;
+            minAt[i] = buffer.getLong(position);
+            maxAt[i] = buffer.getLong(position + 8);
+            offsets[i] = (int) buffer.getLong(position + 16);
+            lengths[i] = buffer.getInt(position + 24);
+            rawLengths[i] = buffer.getInt(position + 28);
+            records[i] = buffer.getInt(position + 32);
+        }
+    }
+    
+    static AuditSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射在通道关闭后依然有效
+            return new AuditSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    static Writer writer(Path target) throws IOException {
+        return new Writer(target);
+    }
+    
+    Path path() {
+        return path;
+    }
+    
+    /**
+     * 回调时间在 [from, to] 内且满足过滤条件的记录，时间范围外的块不解压
+     */
+    void scan(LocalDateTime from, LocalDateTime to, Predicate<AuditLog> filter, Consumer<AuditLog> sink)
+            throws IOException {
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+        Inflater inflater = new Inflater();
+        try {
+            for (int i = 0; i < offsets.length; i++) {
+                if (maxAt[i] < fromMicros || minAt[i] > toMicros) {
+                    continue;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(inflater, i)));
+                for (int r = 0; r < records[i]; r++) {
+                    long at = in.readLong();
+                    AuditLog log = readRecord(in, at);
+                    if (at >= fromMicros && at <= toMicros && filter.test(log)) {
+                        sink.accept(log);
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    void forEach(Consumer<AuditLog> sink) throws IOException {
+        scan(LocalDateTime.MIN, LocalDateTime.MAX, log -> true, sink);
+    }
+    
+    private byte[] inflate(Inflater inflater, int block) throws IOException {
+        ByteBuffer compressed = buffer.slice(offsets[block], lengths[block]);
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLengths[block]];
+        int filled = 0;
+        try {
+            while (filled < raw.length) {
+                int count = inflater.inflate(raw, filled, raw.length - filled);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("审计段文件数据不完整: " + path);
+                }
+                filled += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("审计段文件数据损坏: " + path, e);
+        }
+        return raw;
+    }
+    
+    private static AuditLog readRecord(DataInputStream in, long at) throws IOException {
+        AuditLog log = new AuditLog();
+        log.setAt(fromMicros(at));
+        log.setLogDate(log.getAt().toLocalDate());
+        log.setId(in.readUTF());
+        log.setActor(readNullable(in));
+        log.setAction(readNullable(in));
+        log.setEntity(readNullable(in));
+        log.setIp(readNullable(in));
+        return log;
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static boolean hasMagic(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[MAGIC.length];
+        buffer.get(position, bytes);
+        return Arrays.equals(bytes, MAGIC);
+    }
+    
+    // 审计时间是不带时区的本地时间，这里按 UTC 换算只是为了得到可比较的整数
+    private static long toMicros(LocalDateTime time) {
+        if (time.equals(LocalDateTime.MIN)) {
+            return Long.MIN_VALUE;
+        }
+        if (time.equals(LocalDateTime.MAX)) {
+            return Long.MAX_VALUE;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+    
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+    
+    /**
+     * 先写临时文件，commit 时刷盘并原子改名；未 commit 就关闭则删除临时文件
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        private final DataOutputStream block = new DataOutputStream(blockBytes);
+        private final List<long[]> index = new ArrayList<>();
+        private long position;
+        private int blockRecords;
+        private long blockMin = Long.MAX_VALUE;
+        private long blockMax = Long.MIN_VALUE;
+        private int count;
+        private boolean committed;
+        
+        private Writer(Path target) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.file = new FileOutputStream(temp.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(file));
+            out.write(MAGIC);
+            position = MAGIC.length;
+        }
+        
+        void add(AuditLog log) {
+            try {
+                long at = toMicros(log.getAt());
+                block.writeLong(at);
+                block.writeUTF(log.getId());
+                writeNullable(block, log.getActor());
+                writeNullable(block, log.getAction());
+                writeNullable(block, log.getEntity());
+                writeNullable(block, log.getIp());
+                blockMin = Math.min(blockMin, at);
+                blockMax = Math.max(blockMax, at);
+                count++;
+                if (++blockRecords == RECORDS_PER_BLOCK) {
+                    flushBlock();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        int count() {
+            return count;
+        }
+        
+        void commit() throws IOException {
+            flushBlock();
+            long indexOffset = position;
+            for (long[] entry : index) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeLong(entry[2]);
+                out.writeInt((int) entry[3]);
+                out.writeInt((int) entry[4]);
+                out.writeInt((int) entry[5]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(index.size());
+            out.write(MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+            out.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+        
+        private void flushBlock() throws IOException {
+            if (blockRecords == 0) {
+                return;
+            }
+            byte[] raw = blockBytes.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                compressed.write(chunk, 0, length);
+            }
+            
+            out.write(compressed.toByteArray());
+            index.add(new long[]{blockMin, blockMax, position, compressed.size(), raw.length, blockRecords});
+            position += compressed.size();
+            blockBytes.reset();
+            blockRecords = 0;
+            blockMin = Long.MAX_VALUE;
+            blockMax = Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.fruitshop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fruitshop.dto.AuditLogPage;
+import com.fruitshop.dto.AuditMetrics;
+import com.fruitshop.dto.AuditQuery;
+import com.fruitshop.entity.AuditLog;
+import com.fruitshop.repository.AuditLogJdbcRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步审计 - 请求线程把事件发布到有界无锁环形缓冲区后立即返回，
+ * 单个后台写线程批量取出，一次 JDBC batch 写入 audit_logs（group commit）。
+ * 缓冲区满时按 overflow-policy 处理：BLOCK 等待空位，DROP 丢弃并计数，SPILL 追加到本地溢出文件；
+ * 写库失败的批次同样转入溢出文件，由写线程空闲时回放
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AuditService {
+    
+    // 认证过滤器把当前用户名放入该请求属性，未设置时记为系统操作
+    public static final String ACTOR_ATTRIBUTE = "fruitshop.audit.actor";
+    private static final String DEFAULT_ACTOR = "系统";
+    private static final String SECTION = "auditLogs";
+    // audit_logs 字符串列的长度上限，超长的行会让整批写入失败
+    private static final int MAX_COLUMN_LENGTH = 255;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long REPLAY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    // 未指定起始时间时默认查询最近7天
+    private static final int DEFAULT_RANGE_DAYS = 7;
+    
+    public enum OverflowPolicy {
+        BLOCK, DROP, SPILL
+    }
+    
+    private final AuditLogJdbcRepository auditLogJdbcRepository;
+    private final AuditArchive auditArchive;
+    private final SnapshotChangeLog changeLog;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${fruitshop.audit.buffer-capacity:8192}")
+    private int bufferCapacity;
+    
+    @Value("${fruitshop.audit.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${fruitshop.audit.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    
+    @Value("${fruitshop.audit.overflow-policy:SPILL}")
+    private OverflowPolicy overflowPolicy;
+    
+    @Value("${fruitshop.audit.spill-file:data/audit-spill.ndjson}")
+    private String spillFile;
+    
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Object spillLock = new Object();
+    
+    private AuditRingBuffer<Pending> buffer;
+    private TransactionTemplate tx;
+    private Path spillPath;
+    private Path replayPath;
+    private Thread writer;
+    private volatile boolean running;
+    private long nextReplayAt;
+    
+    @PostConstruct
+    public void start() {
+        buffer = new AuditRingBuffer<>(bufferCapacity);
+        tx = new TransactionTemplate(transactionManager);
+        spillPath = Paths.get(spillFile).toAbsolutePath();
+        replayPath = spillPath.resolveSibling(spillPath.getFileName() + ".replay");
+        
+        running = true;
+        writer = new Thread(this::runWriter, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * 停止前写完缓冲区中剩余的事件
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public void record(String action, String entity) {
+        recordAll(action, List.of(entity));
+    }
+    
+    /**
+     * 操作人和 IP 在调用线程上取自当前请求；事务提交后才发布，回滚的操作不留审计记录
+     */
+    public void recordAll(String action, Collection<String> entities) {
+        HttpServletRequest request = currentRequest();
+        String actor = actorOf(request);
+        String ip = request != null ? clientIp(request) : null;
+        LocalDateTime at = LocalDateTime.now();
+        
+        List<AuditLog> logs = new ArrayList<>(entities.size());
+        for (String entity : entities) {
+            logs.add(new AuditLog(newId(), truncate(actor), truncate(action), truncate(entity),
+                    at, at.toLocalDate(), truncate(ip)));
+        }
+        TransactionCallbacks.afterCommit(() -> logs.forEach(this::publish));
+    }
+    
+    /**
+     * 按时间范围、操作人、动作、对象分页查询，(at, id) 倒序的 keyset 分页，只读取范围内的日分区；
+     * 已归档的日分区从段文件读取，对调用方透明
+     */
+    public AuditLogPage listPage(AuditQuery query) {
+        LocalDateTime to = query.getTo() != null ? query.getTo() : LocalDateTime.now();
+        LocalDateTime from = query.getFrom() != null ? query.getFrom() : to.minusDays(DEFAULT_RANGE_DAYS);
+        if (from.isAfter(to)) {
+            throw new RuntimeException("起始时间不能晚于结束时间");
+        }
+        int size = query.getLimit() == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(query.getLimit(), 1), MAX_PAGE_SIZE);
+        LocalDateTime afterAt = null;
+        String afterId = null;
+        if (query.getCursor() != null && !query.getCursor().isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(query.getCursor()), StandardCharsets.UTF_8)
+                        .split("\\|", 2);
+                afterAt = LocalDateTime.parse(parts[0]);
+                afterId = parts[1];
+            } catch (RuntimeException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        
+        // 热数据和归档各多取一行，合并后判断是否还有下一页
+        String actor = blankToNull(query.getActor());
+        String action = blankToNull(query.getAction());
+        String entity = blankToNull(query.getEntity());
+        List<AuditLog> rows = new ArrayList<>(auditLogJdbcRepository.findPage(
+                from, to, actor, action, entity, afterAt, afterId, size + 1));
+        rows.addAll(auditArchive.findPage(from, to, row -> (actor == null || actor.equals(row.getActor()))
+                && (action == null || action.equals(row.getAction()))
+                && (entity == null || entity.equals(row.getEntity())), afterAt, afterId, size + 1));
+        rows.sort(AuditArchive.NEWEST_FIRST);
+        if (rows.size() <= size) {
+            return new AuditLogPage(rows, null);
+        }
+        
+        List<AuditLog> items = new ArrayList<>(rows.subList(0, size));
+        AuditLog last = items.get(size - 1);
+        String next = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((last.getAt() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        return new AuditLogPage(items, next);
+    }
+    
+    public AuditMetrics metrics() {
+        AuditMetrics metrics = new AuditMetrics();
+        metrics.setOverflowPolicy(overflowPolicy.name());
+        metrics.setCapacity(buffer.capacity());
+        metrics.setDepth(buffer.size());
+        Pending oldest = buffer.peek();
+        metrics.setLagMs(oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.publishedAt));
+        metrics.setPublished(published.sum());
+        metrics.setWritten(written.get());
+        metrics.setDropped(dropped.sum());
+        metrics.setSpilled(spilled.sum());
+        metrics.setFailed(failed.get());
+        metrics.setSpillPending(Files.exists(spillPath) || Files.exists(replayPath));
+        return metrics;
+    }
+    
+    private void publish(AuditLog auditLog) {
+        published.increment();
+        Pending pending = new Pending(auditLog, System.nanoTime());
+        if (buffer.offer(pending)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                while (!buffer.offer(pending)) {
+                    if (!running) {
+                        dropped.increment();
+                        return;
+                    }
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+            }
+            case DROP -> dropped.increment();
+            case SPILL -> spill(List.of(auditLog));
+        }
+    }
+    
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            // 先读停止标志再取数据，停止前已发布的事件都会被写出
+            boolean stopping = !running;
+            int count = buffer.drainTo(batch, batchSize);
+            if (count > 0) {
+                write(batch);
+                batch.clear();
+            } else if (stopping) {
+                break;
+            } else {
+                replaySpill();
+            }
+            if (count < batchSize && !stopping) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            }
+        }
+    }
+    
+    private void write(List<Pending> batch) {
+        List<AuditLog> logs = batch.stream().map(pending -> pending.auditLog).toList();
+        try {
+            tx.executeWithoutResult(status -> auditLogJdbcRepository.insertAll(logs));
+            written.addAndGet(logs.size());
+            // 写入绕过了 JPA 监听器，需手动登记快照变更
+            changeLog.recordAllAfterCommit(SECTION, logs.stream().map(AuditLog::getId).toList());
+        } catch (RuntimeException e) {
+            log.error("审计日志批量写入失败，{} 条转入溢出文件", logs.size(), e);
+            failed.addAndGet(logs.size());
+            spill(logs);
+        }
+    }
+    
+    private void spill(List<AuditLog> logs) {
+        synchronized (spillLock) {
+            try {
+                Files.createDirectories(spillPath.getParent());
+                try (BufferedWriter out = Files.newBufferedWriter(spillPath, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (AuditLog auditLog : logs) {
+                        out.write(objectMapper.writeValueAsString(auditLog));
+                        out.newLine();
+                    }
+                }
+                spilled.add(logs.size());
+            } catch (IOException e) {
+                log.error("审计日志写入溢出文件失败，{} 条丢失", logs.size(), e);
+                dropped.add(logs.size());
+            }
+        }
+    }
+    
+    /**
+     * 把溢出文件改名后逐批入库。中途失败时保留文件稍后重试，已入库的行按ID跳过，不会重复写入
+     */
+    private void replaySpill() {
+        if (System.nanoTime() - nextReplayAt < 0) {
+            return;
+        }
+        try {
+            synchronized (spillLock) {
+                if (Files.notExists(replayPath)) {
+                    if (Files.notExists(spillPath)) {
+                        return;
+                    }
+                    Files.move(spillPath, replayPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            
+            long replayed = 0;
+            try (BufferedReader reader = Files.newBufferedReader(replayPath, StandardCharsets.UTF_8)) {
+                List<AuditLog> chunk = new ArrayList<>(batchSize);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        chunk.add(objectMapper.readValue(line, AuditLog.class));
+                    }
+                    if (chunk.size() == batchSize) {
+                        replayed += insertMissing(chunk);
+                        chunk.clear();
+                    }
+                }
+                replayed += insertMissing(chunk);
+            }
+            Files.delete(replayPath);
+            log.info("审计溢出文件回放完成，写入 {} 条", replayed);
+        } catch (IOException | RuntimeException e) {
+            nextReplayAt = System.nanoTime() + REPLAY_RETRY_NANOS;
+            log.warn("审计溢出文件回放中断，稍后重试: {}", e.getMessage());
+        }
+    }
+    
+    private int insertMissing(List<AuditLog> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        List<AuditLog> missing = tx.execute(status -> {
+            Set<String> existing = auditLogJdbcRepository.findExistingIds(
+                    chunk.stream().map(AuditLog::getId).toList());
+            List<AuditLog> rows = chunk.stream().filter(row -> !existing.contains(row.getId())).toList();
+            auditLogJdbcRepository.insertAll(rows);
+            return rows;
+        });
+        written.addAndGet(missing.size());
+        changeLog.recordAllAfterCommit(SECTION, missing.stream().map(AuditLog::getId).toList());
+        return missing.size();
+    }
+    
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet ? servlet.getRequest() : null;
+    }
+    
+    private static String actorOf(HttpServletRequest request) {
+        Object actor = request != null ? request.getAttribute(ACTOR_ATTRIBUTE) : null;
+        return actor != null ? actor.toString() : DEFAULT_ACTOR;
+    }
+    
+    // 请求头可被客户端任意伪造，只取连接地址；经反向代理时由 Tomcat 按受信代理改写（server.forward-headers-strategy）
+    private static String clientIp(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+    
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+    
+    private static String truncate(String value) {
+        return value != null && value.length() > MAX_COLUMN_LENGTH ? value.substring(0, MAX_COLUMN_LENGTH) : value;
+    }
+    
+    private static String newId() {
+        return "log-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    }
+    
+    private static final class Pending {
+        private final AuditLog auditLog;
+        private final long publishedAt;
+        
+        private Pending(AuditLog auditLog, long publishedAt) {
+            this.auditLog = auditLog;
+            this.publishedAt = publishedAt;
+        }
+    }
+}
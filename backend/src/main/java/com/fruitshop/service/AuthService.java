@@ -4,10 +4,9 @@ import com.fruitshop.dto.LoginRequest;
 import com.fruitshop.dto.LoginResponse;
 import com.fruitshop.dto.RegisterRequest;
 import com.fruitshop.dto.RegisterResponse;
-import com.fruitshop.entity.RoleMatrix;
+import com.fruitshop.dto.TokenClaims;
 import com.fruitshop.entity.Store;
 import com.fruitshop.entity.User;
-import com.fruitshop.repository.RoleMatrixRepository;
 import com.fruitshop.repository.StoreRepository;
 import com.fruitshop.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
@@ -16,7 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,27 +24,75 @@ public class AuthService {
     
     private final UserRepository userRepository;
     private final StoreRepository storeRepository;
-    private final RoleMatrixRepository roleMatrixRepository;
+    private final PermissionEngine permissionEngine;
+    private final PasswordHasher passwordHasher;
+    private final SnapshotChangeLog changeLog;
+    private final TokenService tokenService;
     
     public LoginResponse login(LoginRequest request) {
-        User user = userRepository.findByUsername(request.getUsername())
-                .orElseThrow(() -> new RuntimeException("账号或密码不正确"));
+        // 不加事务：查询结束即归还连接，等待哈希期间不占用连接池
+        Optional<User> found = userRepository.findByUsername(request.getUsername());
         
-        if (!user.getPassword().equals(request.getPassword())) {
+        // 账号不存在时同样做一次哈希比较，不能从响应时间判断账号是否存在
+        if (!passwordHasher.matches(request.getPassword(), found.map(User::getPassword).orElse(null))) {
             throw new RuntimeException("账号或密码不正确");
         }
+        User user = found.get();
         
+        // 明文旧密码在首次登录成功后改写为哈希
+        if (passwordHasher.needsRehash(user.getPassword())) {
+            String hashed = passwordHasher.hash(request.getPassword());
+            if (userRepository.replacePassword(user.getUsername(), user.getPassword(), hashed) > 0) {
+                changeLog.recordAfterCommit("users", user.getUsername());
+            }
+        }
+        
+        return buildLoginResponse(user);
+    }
+    
+    /**
+     * 用刷新令牌换一组新令牌，旧的刷新令牌随即注销（轮换）。
+     * 刷新时重新读取用户，角色或门店的变更在此生效
+     */
+    public LoginResponse refresh(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            throw new RuntimeException("缺少刷新令牌");
+        }
+        TokenClaims claims = tokenService.verify(refreshToken, TokenService.REFRESH);
+        // verify 之后可能已被并发的刷新请求注销，以注销是否成功为准
+        if (!tokenService.revoke(claims)) {
+            throw new RuntimeException("令牌已注销");
+        }
+        User user = userRepository.findByUsername(claims.getUsername())
+                .orElseThrow(() -> new RuntimeException("账号不存在"));
+        return buildLoginResponse(user);
+    }
+    
+    public void logout(TokenClaims accessClaims, String refreshToken) {
+        if (accessClaims != null) {
+            tokenService.revoke(accessClaims);
+        }
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            try {
+                tokenService.revoke(tokenService.verify(refreshToken, TokenService.REFRESH));
+            } catch (RuntimeException e) {
+                // 已失效的刷新令牌无需再注销
+            }
+        }
+    }
+    
+    private LoginResponse buildLoginResponse(User user) {
         // 获取用户可访问的门店
         List<Store> stores = storeRepository.findAllById(user.getStoreIds());
         
         // 获取角色权限
-        List<String> permissions = roleMatrixRepository.findById(user.getRole())
-                .map(RoleMatrix::getPermissions)
-                .orElse(Collections.emptyList());
+        List<String> permissions = permissionEngine.permissions(user.getRole());
         
         // 构建响应
         LoginResponse response = new LoginResponse();
-        response.setToken("token-" + UUID.randomUUID().toString());
+        response.setToken(tokenService.issue(user, TokenService.ACCESS));
+        response.setRefreshToken(tokenService.issue(user, TokenService.REFRESH));
+        response.setExpiresIn(tokenService.getAccessTokenTtlSeconds());
         
         LoginResponse.UserDto userDto = new LoginResponse.UserDto();
         userDto.setUsername(user.getUsername());
@@ -81,7 +128,7 @@ public class AuthService {
         // 创建用户
         User user = new User();
         user.setUsername(request.getUsername());
-        user.setPassword(request.getPassword());
+        user.setPassword(passwordHasher.hash(request.getPassword()));
         user.setName(request.getName());
         user.setRole(role);
         user.setEmail(request.getUsername() + "@fruitshop.com");
@@ -0,0 +1,339 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.BarcodeScan;
+import com.fruitshop.entity.Product;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 条码索引 - 商品条码按 (位数, 数值) 编码成 long，存入线性探测的开放寻址表，值为商品ID，
+ * 扫码时逐字符解析、按键查表，不分配对象也不查库。
+ * 秤打印的店内称重码（EAN-13：2位前缀 + PLU + 重量克数 + 校验位）先按完整条码查，查不到再解出 PLU 和重量，
+ * PLU 对应条码位数不超过 PLU 位数的商品（如条码 "00123" 或 "123" 都对应 PLU 123）。
+ * 启动时从数据库重建，之后随商品的 JPA 事务提交增量更新
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BarcodeIndex {
+    
+    // 键的高位区分类型：条码键在 56-59 位记位数（最多15位），PLU 键置第62位；0 表示空槽
+    private static final int MAX_DIGITS = 15;
+    private static final int LENGTH_SHIFT = 56;
+    private static final long PLU_TAG = 1L << 62;
+    private static final long EMPTY = 0L;
+    private static final long NOT_FOUND = -1L;
+    
+    private static final int EAN13_LENGTH = 13;
+    private static final int PREFIX_DIGITS = 2;
+    // 重量按克打印，换算为千克保留3位
+    private static final int WEIGHT_SCALE = 3;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductCatalog productCatalog;
+    
+    @Value("${fruitshop.barcode.weight-prefixes:20,21,22,23,24,25,26,27,28,29}")
+    private List<Integer> weightPrefixes;
+    
+    @Value("${fruitshop.barcode.plu-digits:5}")
+    private int pluDigits;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] keys = new long[16];
+    private String[] values = new String[16];
+    private int size;
+    // 商品ID -> 当前条码，只在写锁内使用，用于改条码时删除旧键
+    private final Map<String, String> barcodes = new HashMap<>();
+    private volatile boolean[] weightPrefix;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        boolean[] prefixes = new boolean[100];
+        weightPrefixes.forEach(prefix -> prefixes[prefix] = true);
+        Map<String, String> rows = new HashMap<>();
+        jdbcTemplate.query("SELECT id, barcode FROM products WHERE barcode IS NOT NULL", rs -> {
+            rows.put(rs.getString(1), rs.getString(2));
+        });
+        lock.writeLock().lock();
+        try {
+            weightPrefix = prefixes;
+            keys = new long[tableCapacity(rows.size())];
+            values = new String[keys.length];
+            size = 0;
+            barcodes.clear();
+            rows.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("条码索引已重建，{} 个商品，{} 个键", barcodes.size(), size);
+    }
+    
+    /**
+     * 扫码解析：普通条码直接返回商品；经 PLU 匹配的称重码另带 PLU、重量和金额。
+     * 完整登记过的条码即使形如称重码也按普通条码处理。条码无效或没有对应商品时返回空
+     */
+    public Optional<BarcodeScan> scan(String code) {
+        long key = codeKey(code);
+        if (key == NOT_FOUND) {
+            return Optional.empty();
+        }
+        String productId;
+        boolean weighed = false;
+        lock.readLock().lock();
+        try {
+            productId = get(key);
+            if (productId == null) {
+                productId = findByPlu(code);
+                weighed = productId != null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (productId == null) {
+            return Optional.empty();
+        }
+        BarcodeScan scan = new BarcodeScan();
+        scan.setBarcode(code);
+        scan.setProductId(productId);
+        if (weighed) {
+            scan.setPlu((int) pluOf(code));
+            scan.setWeightKg(BigDecimal.valueOf(weightGrams(code), WEIGHT_SCALE));
+        }
+        Product product = productCatalog.get(productId).orElse(null);
+        scan.setProduct(product);
+        if (product != null && product.getPriceBase() != null && scan.getWeightKg() != null) {
+            scan.setAmount(product.getPriceBase().multiply(scan.getWeightKg()).setScale(2, RoundingMode.HALF_UP));
+        }
+        return Optional.of(scan);
+    }
+    
+    /**
+     * 条码对应的商品ID；完整条码未登记且是称重码时按 PLU 查找。不分配对象
+     */
+    public String find(CharSequence code) {
+        long key = codeKey(code);
+        if (key == NOT_FOUND) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            String productId = get(key);
+            return productId != null ? productId : findByPlu(code);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 称重码中的重量（克）；不是称重码（位数、前缀或校验位不符）时返回 -1
+     */
+    public long weightGrams(CharSequence code) {
+        if (code == null || code.length() != EAN13_LENGTH || !validEan13(code)) {
+            return -1;
+        }
+        int prefix = (code.charAt(0) - '0') * 10 + (code.charAt(1) - '0');
+        if (weightPrefix == null || !weightPrefix[prefix]) {
+            return -1;
+        }
+        return digits(code, PREFIX_DIGITS + pluDigits, EAN13_LENGTH - 1);
+    }
+    
+    public void updateAfterCommit(Product product) {
+        String id = product.getId();
+        String barcode = product.getBarcode();
+        TransactionCallbacks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(id);
+                put(id, barcode);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    public void removeAfterCommit(String productId) {
+        TransactionCallbacks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(productId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    // 以下方法在写锁内调用
+    
+    private void put(String productId, String barcode) {
+        long key = codeKey(barcode);
+        if (key == NOT_FOUND) {
+            return;
+        }
+        barcodes.put(productId, barcode);
+        insert(key, productId);
+        if (barcode.length() <= pluDigits) {
+            insert(PLU_TAG | digits(barcode, 0, barcode.length()), productId);
+        }
+    }
+    
+    private void remove(String productId) {
+        String barcode = barcodes.remove(productId);
+        if (barcode == null) {
+            return;
+        }
+        delete(codeKey(barcode), productId);
+        if (barcode.length() <= pluDigits) {
+            delete(PLU_TAG | digits(barcode, 0, barcode.length()), productId);
+        }
+    }
+    
+    private void insert(long key, String productId) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                if (!productId.equals(values[slot])) {
+                    log.warn("条码重复，{} 覆盖 {}", productId, values[slot]);
+                }
+                values[slot] = productId;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = productId;
+        size++;
+    }
+    
+    // 线性探测的删除：把后面本应更靠前的键依次前移，保持探测链不断
+    private void delete(long key, String productId) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!productId.equals(values[slot])) {
+            // 键已被其他商品覆盖
+            return;
+        }
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = slotOf(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+        size--;
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new long[capacity];
+        values = new String[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+    
+    // 读锁内调用
+    private String get(long key) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+    
+    // 完整条码未登记时，称重码按 PLU 查找；读锁内调用
+    private String findByPlu(CharSequence code) {
+        return weightGrams(code) >= 0 ? get(PLU_TAG | pluOf(code)) : null;
+    }
+    
+    private long pluOf(CharSequence code) {
+        return digits(code, PREFIX_DIGITS, PREFIX_DIGITS + pluDigits);
+    }
+    
+    // 1-15位纯数字编码为 (位数, 数值)，前导零不同的条码是不同的键；其他输入返回 NOT_FOUND
+    private static long codeKey(CharSequence code) {
+        if (code == null || code.isEmpty() || code.length() > MAX_DIGITS) {
+            return NOT_FOUND;
+        }
+        long value = digits(code, 0, code.length());
+        return value < 0 ? NOT_FOUND : ((long) code.length() << LENGTH_SHIFT) | value;
+    }
+    
+    // [from, to) 区间的十进制值，含非数字字符时返回 -1
+    private static long digits(CharSequence code, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = code.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    // EAN-13 校验位：从左起奇数位权重1、偶数位权重3
+    private static boolean validEan13(CharSequence code) {
+        int sum = 0;
+        for (int i = 0; i < EAN13_LENGTH - 1; i++) {
+            int digit = code.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        int check = code.charAt(EAN13_LENGTH - 1) - '0';
+        return check == (10 - sum % 10) % 10;
+    }
+    
+    private static int slotOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    
+    private static int tableCapacity(int products) {
+        // 每个商品至多两个键，装载率不超过 1/2
+        int capacity = 16;
+        while (capacity < products * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
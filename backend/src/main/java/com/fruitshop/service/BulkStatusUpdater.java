@@ -0,0 +1,247 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.BulkStatusRequest;
+import com.fruitshop.dto.BulkStatusResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 批量状态变更 - 按ID列表或筛选条件（门店、日期区间、渠道）分块执行集合式 UPDATE，每块一个短事务，
+ * 连接只在块内占用。按ID处理时一条 SELECT ... FOR UPDATE 锁住整块并取出当前状态，逐个给出失败原因；
+ * 按条件处理时沿 (日期, id) 键集逐块推进，已处理的行不会被重复扫描。
+ * 集合式 UPDATE 不经过 JPA，实体监听器不会触发，调用方在 onChunk 中补做审计、快照变更和内存索引的同步
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkStatusUpdater {
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${fruitshop.bulk.chunk-size:500}")
+    private int chunkSize;
+    
+    @Value("${fruitshop.bulk.max-ids:20000}")
+    private int maxIds;
+    
+    /**
+     * 目标表：label 用于失败原因，dateColumn 是按条件筛选的日期列，channelColumn 为 null 表示不支持按渠道筛选
+     */
+    public record Target(String table, String label, String dateColumn, String channelColumn) {
+    }
+    
+    /**
+     * 把请求指定的单据改为 status；fromStatus 不为 null 时只改处于该状态的单据。
+     * onChunk 在每块的事务内收到实际改动的ID
+     */
+    public BulkStatusResponse update(Target target, String storeId, BulkStatusRequest request,
+                                     String fromStatus, String status, Consumer<List<String>> onChunk) {
+        long started = System.currentTimeMillis();
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byFilter = request.getFrom() != null || request.getTo() != null || request.getChannel() != null;
+        if (byIds == byFilter) {
+            throw new RuntimeException("请指定ID列表或筛选条件（二者只能选一种）");
+        }
+        
+        BulkStatusResponse response = new BulkStatusResponse();
+        response.setStatus(status);
+        if (byIds) {
+            updateByIds(target, storeId, request.getIds(), fromStatus, status, onChunk, response);
+        } else {
+            updateByFilter(target, storeId, request, fromStatus, status, onChunk, response);
+        }
+        response.setFailed(response.getFailures().size());
+        response.setElapsedMs(System.currentTimeMillis() - started);
+        log.info("{}批量变更为 {}：门店 {}，成功 {}，失败 {}，耗时 {}ms", target.label(), status, storeId,
+                response.getSucceeded(), response.getFailed(), response.getElapsedMs());
+        return response;
+    }
+    
+    private void updateByIds(Target target, String storeId, List<String> requested, String fromStatus,
+                             String status, Consumer<List<String>> onChunk, BulkStatusResponse response) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(requested));
+        if (ids.size() > maxIds) {
+            throw new RuntimeException("单次最多处理 " + maxIds + " 个ID");
+        }
+        response.setTotal(ids.size());
+        
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            List<BulkStatusResponse.Failure> failures = new ArrayList<>();
+            List<String> updated;
+            try {
+                updated = transactionTemplate.execute(tx -> {
+                    Map<String, String[]> current = new HashMap<>();
+                    jdbcTemplate.query("SELECT id, store_id, status FROM " + target.table()
+                            + " WHERE id IN (" + placeholders(chunk.size()) + ") FOR UPDATE", rs -> {
+                        current.put(rs.getString(1), new String[]{rs.getString(2), rs.getString(3)});
+                    }, chunk.toArray());
+                    
+                    List<String> eligible = new ArrayList<>();
+                    for (String id : chunk) {
+                        String failure = check(target, storeId, current.get(id), fromStatus, status);
+                        if (failure == null) {
+                            eligible.add(id);
+                        } else {
+                            failures.add(new BulkStatusResponse.Failure(id, failure));
+                        }
+                    }
+                    // 行已被锁住，状态不会再变，按主键直接更新
+                    apply(target, eligible, status, "", List.of(), onChunk);
+                    return eligible;
+                });
+            } catch (DataAccessException e) {
+                // 整块回滚，逐个记为失败，其余块照常处理
+                log.error("{}批量变更第 {} 块失败", target.label(), from / chunkSize + 1, e);
+                failures.clear();
+                updated = Collections.emptyList();
+                chunk.forEach(id -> failures.add(new BulkStatusResponse.Failure(id, "数据库更新失败，请重试")));
+            }
+            response.setSucceeded(response.getSucceeded() + updated.size());
+            response.getFailures().addAll(failures);
+        }
+    }
+    
+    private void updateByFilter(Target target, String storeId, BulkStatusRequest request, String fromStatus,
+                                String status, Consumer<List<String>> onChunk, BulkStatusResponse response) {
+        if (request.getFrom() == null || request.getTo() == null) {
+            throw new RuntimeException("按条件批量处理需要同时指定 from 和 to");
+        }
+        if (request.getChannel() != null && target.channelColumn() == null) {
+            throw new RuntimeException(target.label() + "不支持按渠道筛选");
+        }
+        LocalDate from = parseDate(request.getFrom());
+        LocalDate to = parseDate(request.getTo());
+        
+        StringBuilder where = new StringBuilder(" WHERE store_id = ? AND status <> ?");
+        List<Object> baseArgs = new ArrayList<>(List.of(storeId, status));
+        if (fromStatus != null) {
+            where.append(" AND status = ?");
+            baseArgs.add(fromStatus);
+        }
+        if (request.getChannel() != null) {
+            where.append(" AND ").append(target.channelColumn()).append(" = ?");
+            baseArgs.add(request.getChannel());
+        }
+        String date = target.dateColumn();
+        where.append(" AND ").append(date).append(" >= ? AND ").append(date).append(" <= ?");
+        String select = "SELECT id, " + date + " FROM " + target.table() + where;
+        // 门店已固定，按 (store_id, 日期, id) 排序与索引顺序一致，数据库沿索引读够一块即停，不必整体排序。
+        // 不加 FOR UPDATE（部分数据库会锁住整个区间），改由 UPDATE 重复状态条件，期间被改动的行不受影响
+        String order = " ORDER BY store_id, " + date + ", id LIMIT ?";
+        String guard = " AND status <> ?" + (fromStatus != null ? " AND status = ?" : "");
+        List<Object> guardArgs = fromStatus != null ? List.of(status, fromStatus) : List.of(status);
+        // 区间下限随之推进到上一块的最后日期，索引范围不再包含已处理的日期，只重读当天已处理的部分
+        String after = " AND (" + date + " > ? OR id > ?)";
+        
+        LocalDate lastDate = null;
+        String lastId = null;
+        while (true) {
+            List<Object> args = new ArrayList<>(baseArgs);
+            args.add(Date.valueOf(lastId != null ? lastDate : from));
+            args.add(Date.valueOf(to));
+            if (lastId != null) {
+                args.add(Date.valueOf(lastDate));
+                args.add(lastId);
+            }
+            args.add(chunkSize);
+            String sql = select + (lastId != null ? after : "") + order;
+            List<String> ids = new ArrayList<>();
+            List<LocalDate> dates = new ArrayList<>();
+            int updated;
+            try {
+                updated = transactionTemplate.execute(tx -> {
+                    jdbcTemplate.query(sql, rs -> {
+                        ids.add(rs.getString(1));
+                        dates.add(rs.getDate(2).toLocalDate());
+                    }, args.toArray());
+                    return apply(target, ids, status, guard, guardArgs, onChunk);
+                });
+            } catch (DataAccessException e) {
+                // 之前的块已提交，按相同条件重试即可继续处理剩余部分
+                log.error("{}批量变更失败，已完成 {} 条", target.label(), response.getSucceeded(), e);
+                throw new RuntimeException("批量更新在完成 " + response.getSucceeded() + " 条后失败，请按相同条件重试");
+            }
+            response.setTotal(response.getTotal() + updated);
+            response.setSucceeded(response.getSucceeded() + updated);
+            if (ids.size() < chunkSize) {
+                return;
+            }
+            lastId = ids.get(ids.size() - 1);
+            lastDate = dates.get(dates.size() - 1);
+        }
+    }
+    
+    private int apply(Target target, List<String> ids, String status, String guard, List<Object> guardArgs,
+                      Consumer<List<String>> onChunk) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>(ids.size() + 3);
+        args.add(status);
+        args.addAll(ids);
+        args.addAll(guardArgs);
+        int updated = jdbcTemplate.update("UPDATE " + target.table() + " SET status = ? WHERE id IN ("
+                + placeholders(ids.size()) + ")" + guard, args.toArray());
+        if (updated == ids.size()) {
+            onChunk.accept(ids);
+            return updated;
+        }
+        // 选出后被并发改动的行没有命中状态条件，回查本事务改动后处于新状态的行，只同步这些
+        List<Object> recheckArgs = new ArrayList<>(ids.size() + 1);
+        recheckArgs.addAll(ids);
+        recheckArgs.add(status);
+        List<String> changed = jdbcTemplate.queryForList("SELECT id FROM " + target.table() + " WHERE id IN ("
+                + placeholders(ids.size()) + ") AND status = ?", String.class, recheckArgs.toArray());
+        if (!changed.isEmpty()) {
+            onChunk.accept(changed);
+        }
+        return updated;
+    }
+    
+    // row 为 [store_id, status]
+    private static String check(Target target, String storeId, String[] row, String fromStatus, String status) {
+        if (row == null) {
+            return target.label() + "不存在";
+        }
+        if (!storeId.equals(row[0])) {
+            return target.label() + "不属于该门店";
+        }
+        if (status.equals(row[1])) {
+            return target.label() + "已是 " + status + " 状态";
+        }
+        if (fromStatus != null && !fromStatus.equals(row[1])) {
+            return target.label() + "当前状态为 " + row[1] + "，不是 " + fromStatus;
+        }
+        return null;
+    }
+    
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("日期格式无效: " + value);
+        }
+    }
+    
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
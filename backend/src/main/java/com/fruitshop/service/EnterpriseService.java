@@ -1,15 +1,45 @@
 package com.fruitshop.service;
 
 import com.fruitshop.dto.EnterpriseSnapshot;
+import com.fruitshop.entity.User;
 import com.fruitshop.repository.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class EnterpriseService {
@@ -21,31 +51,274 @@ public class EnterpriseService {
     private final IntegrationRepository integrationRepository;
     private final AutomationRepository automationRepository;
     private final AuditLogRepository auditLogRepository;
+    private final AuditLogJdbcRepository auditLogJdbcRepository;
     private final SystemParameterRepository parameterRepository;
     private final InvoiceRepository invoiceRepository;
     private final AdjustmentRepository adjustmentRepository;
     private final ChannelConfigRepository channelConfigRepository;
-    private final AgingBucketRepository agingBucketRepository;
+    private final AgingHistogram agingHistogram;
     private final UserRepository userRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final SnapshotChangeLog changeLog;
     
-    public EnterpriseSnapshot getSnapshot() {
-        EnterpriseSnapshot snapshot = new EnterpriseSnapshot();
+    // 并发度需小于连接池大小，给业务请求留出连接
+    @Value("${fruitshop.snapshot.parallelism:8}")
+    private int parallelism;
+    
+    // 同一请求同时在查询或等待写出的分区数，限制一个快照请求占用的内存
+    @Value("${fruitshop.snapshot.sections-in-flight:4}")
+    private int sectionsInFlight;
+    
+    @Value("${fruitshop.snapshot.section-timeout-ms:3000}")
+    private long sectionTimeoutMs;
+    
+    @Value("${fruitshop.snapshot.audit-log-limit:200}")
+    private int auditLogLimit;
+    
+    private final Map<String, Section> sectionsByName = new LinkedHashMap<>();
+    // 最近一次查询失败或超时、此后尚未成功过的分区
+    private final Set<String> degradedSections = ConcurrentHashMap.newKeySet();
+    // 每出现一次不完整的快照加一，计入 ETag，让不完整快照带出的 ETag 随即失效
+    private final AtomicLong failureEpoch = new AtomicLong();
+    private TransactionTemplate readOnlyTx;
+    private ExecutorService executor;
+    
+    @PostConstruct
+    public void init() {
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        // 事务超时会设置到每条 JDBC 语句上，超时的分区由数据库中止查询、归还连接；中断线程停不下 JDBC 调用
+        readOnlyTx.setTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(sectionTimeoutMs + 999)));
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "snapshot-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        
+        register(new Section("products", productRepository::findAllWithTags,
+                productRepository::findByIdIn));
+        register(new Section("partners", partnerRepository::findAll,
+                partnerRepository::findAllById));
+        register(new Section("roleMatrix", roleMatrixRepository::findAll,
+                ids -> roleMatrixRepository.findAllById(ids.stream().map(User.UserRole::valueOf).toList())));
+        register(new Section("approvalFlows", approvalFlowRepository::findAll,
+                approvalFlowRepository::findAllById));
+        register(new Section("integrations", integrationRepository::findAll,
+                integrationRepository::findAllById));
+        register(new Section("automations", automationRepository::findAll,
+                automationRepository::findAllById));
+        // 审计日志只带最近的部分，完整历史通过 /audit/logs 分页查询
+        register(new Section("auditLogs",
+                () -> auditLogJdbcRepository.findLatest(auditLogLimit),
+                auditLogRepository::findAllById));
+        register(new Section("parameters", parameterRepository::findAll,
+                parameterRepository::findAllById));
+        register(new Section("invoices", invoiceRepository::findAll,
+                invoiceRepository::findAllById));
+        register(new Section("adjustments", adjustmentRepository::findAll,
+                adjustmentRepository::findAllById));
+        register(new Section("channelConfigs", channelConfigRepository::findAll,
+                channelConfigRepository::findAllById));
+        // 账龄由内存直方图实时给出全公司合计，不查询数据库
+        register(new Section("aging", () -> agingHistogram.buckets(null),
+                ids -> agingHistogram.buckets(null, ids)));
+        register(new Section("users", () -> toUserMaps(userRepository.findAll()),
+                ids -> toUserMaps(userRepository.findAllById(ids))));
+    }
+    
+    private void register(Section section) {
+        sectionsByName.put(section.name, section);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * 只取所请求分区的最新版本作为 ETag，其他分区的修改不会让客户端缓存失效
+     */
+    public long currentVersion(Collection<String> sectionNames) {
+        return sectionNames.stream().mapToLong(changeLog::sectionVersion).max().orElse(changeLog.currentVersion());
+    }
+    
+    /**
+     * 所请求的分区中有处于降级状态的，本次快照很可能不完整
+     */
+    public boolean isDegraded(Collection<String> sectionNames) {
+        return sectionNames.stream().anyMatch(degradedSections::contains);
+    }
+    
+    public long failureEpoch() {
+        return failureEpoch.get();
+    }
+    
+    /**
+     * 校验分区名；未指定时返回全部分区
+     */
+    public List<String> resolveSections(Collection<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return new ArrayList<>(sectionsByName.keySet());
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : requested) {
+            String trimmed = name.trim();
+            if (!sectionsByName.containsKey(trimmed)) {
+                throw new RuntimeException("未知的快照分区: " + trimmed);
+            }
+            if (!names.contains(trimmed)) {
+                names.add(trimmed);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * 所请求的分区并发查询，每个分区在独立的只读事务中执行，按完成顺序逐个交给 sink 写出。
+     * 同时在查询或等待写出的分区不超过 sections-in-flight 个，写出（或失败）一个才提交下一个，
+     * 客户端读得慢时已查出的数据不会越积越多。未请求的分区不会查询。
+     * 每个分区从查询开始计时，排队和写出其他分区的时间不计入；
+     * 超时或失败的分区不写出并记入 failedSections，其余分区照常返回。
+     * 传入 since 时只返回该版本之后增删改过的行，since 已超出变更日志窗口时退回全量
+     */
+    public EnterpriseSnapshot writeSnapshot(Long since, Collection<String> sectionNames, SectionSink sink)
+            throws IOException {
+        // 先取版本再读数据：版本之后提交的修改一定会出现在下一次增量里
+        long version = changeLog.currentVersion();
+        Map<String, Set<String>> changed = since == null ? null : changeLog.changesSince(since);
         
-        snapshot.setProducts(productRepository.findAll());
-        snapshot.setPartners(partnerRepository.findAll());
-        snapshot.setRoleMatrix(roleMatrixRepository.findAll());
-        snapshot.setApprovalFlows(approvalFlowRepository.findAll());
-        snapshot.setIntegrations(integrationRepository.findAll());
-        snapshot.setAutomations(automationRepository.findAll());
-        snapshot.setAuditLogs(auditLogRepository.findAll());
-        snapshot.setParameters(parameterRepository.findAll());
-        snapshot.setInvoices(invoiceRepository.findAll());
-        snapshot.setAdjustments(adjustmentRepository.findAll());
-        snapshot.setChannelConfigs(channelConfigRepository.findAll());
-        snapshot.setAging(agingBucketRepository.findAll());
+        ExecutorCompletionService<List<?>> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<List<?>>, SectionQuery> pending = new HashMap<>();
+        Deque<SectionQuery> waiting = new ArrayDeque<>();
+        for (String name : sectionNames) {
+            Section section = sectionsByName.get(name);
+            Supplier<List<?>> task;
+            if (changed == null) {
+                task = section.loader;
+            } else if (changed.containsKey(name)) {
+                Set<String> ids = changed.get(name);
+                task = () -> section.byIds.apply(ids);
+            } else {
+                continue;
+            }
+            waiting.add(new SectionQuery(section, task));
+        }
         
-        // 用户列表（隐藏密码）
-        List<Map<String, Object>> users = userRepository.findAll().stream()
+        List<String> failed = new ArrayList<>();
+        Map<String, List<String>> deleted = new HashMap<>();
+        long budget = TimeUnit.MILLISECONDS.toNanos(sectionTimeoutMs);
+        try {
+            while (!pending.isEmpty() || !waiting.isEmpty()) {
+                while (pending.size() < Math.max(1, sectionsInFlight) && !waiting.isEmpty()) {
+                    SectionQuery next = waiting.poll();
+                    pending.put(completion.submit(next), next);
+                }
+                Future<List<?>> future;
+                try {
+                    future = completion.poll(Math.max(0, nextDeadline(pending.values(), budget) - System.nanoTime()),
+                            TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (future == null) {
+                    expire(pending, budget, failed);
+                    continue;
+                }
+                SectionQuery query = pending.remove(future);
+                if (query == null) {
+                    // 已超时取消的分区
+                    continue;
+                }
+                Section section = query.section;
+                List<?> rows;
+                try {
+                    rows = future.get();
+                } catch (ExecutionException e) {
+                    log.warn("快照分区 {} 查询失败", section.name, e.getCause());
+                    failed.add(section.name);
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.add(section.name);
+                    break;
+                }
+                if (changed != null) {
+                    // 变更过但已查不到的行即为已删除
+                    Set<String> missing = new HashSet<>(changed.get(section.name));
+                    rows.forEach(row -> missing.remove(idOf(row)));
+                    if (!missing.isEmpty()) {
+                        deleted.put(section.name, new ArrayList<>(missing));
+                    }
+                }
+                sink.write(section.name, rows);
+                degradedSections.remove(section.name);
+            }
+        } finally {
+            // 中断或写出失败（如客户端断开）时，取消仍在查询的分区
+            for (Map.Entry<Future<List<?>>, SectionQuery> entry : pending.entrySet()) {
+                entry.getKey().cancel(false);
+                log.warn("快照分区 {} 未完成，已取消", entry.getValue().section.name);
+                failed.add(entry.getValue().section.name);
+            }
+            waiting.forEach(query -> failed.add(query.section.name));
+        }
+        
+        if (!failed.isEmpty()) {
+            degradedSections.addAll(failed);
+            failureEpoch.incrementAndGet();
+        }
+        
+        EnterpriseSnapshot snapshot = new EnterpriseSnapshot();
+        snapshot.setVersion(version);
+        snapshot.setFull(changed == null);
+        snapshot.setDeleted(deleted);
+        snapshot.setPartial(!failed.isEmpty());
+        snapshot.setFailedSections(failed);
+        return snapshot;
+    }
+    
+    // 已开始查询的分区中最早的截止时间；都还在排队时等一个完整的时限后再看
+    private static long nextDeadline(Collection<SectionQuery> queries, long budget) {
+        long now = System.nanoTime();
+        long deadline = now + budget;
+        for (SectionQuery query : queries) {
+            if (query.started) {
+                deadline = Math.min(deadline, query.startedAt + budget);
+            }
+        }
+        return deadline;
+    }
+    
+    // 取消查询时间已超出时限的分区。不中断线程：执行中的查询由语句超时中止，
+    // 中断正在从 jar 加载类的线程还会关闭 jar 的文件通道，之后整个进程都加载不了类
+    private static void expire(Map<Future<List<?>>, SectionQuery> pending, long budget, List<String> failed) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Future<List<?>>, SectionQuery>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Future<List<?>>, SectionQuery> entry = entries.next();
+            SectionQuery query = entry.getValue();
+            if (query.started && now - query.startedAt >= budget) {
+                entry.getKey().cancel(false);
+                entries.remove();
+                log.warn("快照分区 {} 未在时限内完成，已取消", query.section.name);
+                failed.add(query.section.name);
+            }
+        }
+    }
+    
+    private static String idOf(Object row) {
+        return row instanceof Map<?, ?> map ? String.valueOf(map.get("id")) : SnapshotChangeListener.idOf(row);
+    }
+    
+    // 用户列表（隐藏密码）
+    private List<Map<String, Object>> toUserMaps(List<User> users) {
+        return users.stream()
                 .map(user -> {
                     Map<String, Object> map = new HashMap<>();
                     map.put("id", user.getUsername());
@@ -57,8 +330,42 @@ public class EnterpriseService {
                     return map;
                 })
                 .collect(Collectors.toList());
-        snapshot.setUsers(users);
+    }
+    
+    @FunctionalInterface
+    public interface SectionSink {
+        void write(String section, List<?> rows) throws IOException;
+    }
+    
+    // 在只读事务中查询一个分区，记录开始时间，时限从这里算起
+    private final class SectionQuery implements Callable<List<?>> {
+        private final Section section;
+        private final Supplier<List<?>> task;
+        private volatile boolean started;
+        private volatile long startedAt;
         
-        return snapshot;
+        private SectionQuery(Section section, Supplier<List<?>> task) {
+            this.section = section;
+            this.task = task;
+        }
+        
+        @Override
+        public List<?> call() {
+            startedAt = System.nanoTime();
+            started = true;
+            return readOnlyTx.execute(status -> task.get());
+        }
+    }
+    
+    private static final class Section {
+        private final String name;
+        private final Supplier<List<?>> loader;
+        private final Function<Collection<String>, List<?>> byIds;
+        
+        private Section(String name, Supplier<List<?>> loader, Function<Collection<String>, List<?>> byIds) {
+            this.name = name;
+            this.loader = loader;
+            this.byIds = byIds;
+        }
     }
 }
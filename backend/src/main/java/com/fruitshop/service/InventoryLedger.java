@@ -0,0 +1,243 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Inventory;
+import com.fruitshop.repository.InventoryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 库存内存账本 - 每个库存行一个无锁计数器，扣减和调整通过 CAS 原子完成（下限为0），
+ * 净变化量由定时任务批量回写 inventory 表（write-behind），启动时从数据库重建。
+ * 扣减使库存从预警线及以上降到预警线以下时，把该库存行交给 {@link ReorderEngine}。
+ * 多实例部署时关闭 write-behind，改为每次变化直接执行条件更新 SQL
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InventoryLedger {
+    
+    // 以0.01kg为单位保存，与 on_hand_kg DECIMAL(12,2) 精度一致
+    private static final int SCALE = 2;
+    
+    private static final String FLUSH_SQL = "UPDATE inventory SET on_hand_kg = GREATEST(on_hand_kg + ?, 0) WHERE id = ?";
+    
+    private final InventoryRepository inventoryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    // 补货引擎经 PurchaseService 依赖本账本，延迟获取以免循环依赖
+    private final ObjectProvider<ReorderEngine> reorderEngine;
+    
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> idsByStoreAndFruit = new ConcurrentHashMap<>();
+    private final Set<Entry> dirty = ConcurrentHashMap.newKeySet();
+    
+    @Value("${fruitshop.inventory.write-behind:true}")
+    private boolean writeBehind;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!writeBehind) {
+            return;
+        }
+        List<Inventory> all = inventoryRepository.findAll();
+        all.forEach(this::register);
+        log.info("库存账本已从数据库重建，共 {} 条", all.size());
+    }
+    
+    /**
+     * 销售扣减，按 (门店, 水果) 定位库存行；没有库存行时忽略
+     */
+    public void deduct(String storeId, String fruit, BigDecimal quantityKg) {
+        if (!writeBehind) {
+            inventoryRepository.deductOnHand(storeId, fruit, quantityKg);
+            checkCrossing("store_id = ? AND fruit = ?", quantityKg, storeId, fruit);
+            return;
+        }
+        resolve(storeId, fruit).ifPresent(entry ->
+                TransactionCallbacks.afterCommit(() -> apply(entry, -toUnits(quantityKg))));
+    }
+    
+    public void adjust(String inventoryId, BigDecimal deltaKg) {
+        if (!writeBehind) {
+            inventoryRepository.adjustOnHand(inventoryId, deltaKg);
+            if (deltaKg != null && deltaKg.signum() < 0) {
+                checkCrossing("id = ?", deltaKg.negate(), inventoryId);
+            }
+            return;
+        }
+        resolve(inventoryId).ifPresent(entry ->
+                TransactionCallbacks.afterCommit(() -> apply(entry, toUnits(deltaKg))));
+    }
+    
+    /**
+     * 入库数量已由 SQL 直接写入数据库，这里只同步账本，不再产生待回写的增量。
+     * 账本中尚无此行时跳过，下次访问会从数据库加载到包含本次入库的值
+     */
+    public void received(String inventoryId, BigDecimal quantityKg) {
+        Entry entry = writeBehind ? entries.get(inventoryId) : null;
+        if (entry != null) {
+            TransactionCallbacks.afterCommit(() -> entry.onHand.addAndGet(toUnits(quantityKg)));
+        }
+    }
+    
+    public Optional<String> findInventoryId(String storeId, String fruit) {
+        if (!writeBehind) {
+            return inventoryRepository.findByStoreIdAndFruit(storeId, fruit).map(Inventory::getId);
+        }
+        return resolve(storeId, fruit).map(entry -> entry.id);
+    }
+    
+    /**
+     * 预警线修改后同步到账本，事务提交后生效
+     */
+    public void reorderLevelChanged(String inventoryId, BigDecimal level) {
+        Entry entry = writeBehind ? entries.get(inventoryId) : null;
+        if (entry != null) {
+            TransactionCallbacks.afterCommit(() -> entry.reorderLevel = toUnits(level));
+        }
+    }
+    
+    public Optional<BigDecimal> onHand(String inventoryId) {
+        return Optional.ofNullable(entries.get(inventoryId)).map(entry -> fromUnits(entry.onHand.get()));
+    }
+    
+    @Scheduled(fixedDelayString = "${fruitshop.inventory.flush-interval-ms:500}")
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        
+        List<Entry> drained = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        for (Iterator<Entry> it = dirty.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            // 先移出脏集合再取走增量，期间到达的新变化会把自己重新加入
+            it.remove();
+            long delta = entry.pending.getAndSet(0);
+            if (delta != 0) {
+                drained.add(entry);
+                deltas.add(delta);
+                args.add(new Object[]{fromUnits(delta), entry.id});
+            }
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, args);
+        } catch (DataAccessException e) {
+            log.error("库存账本回写失败，{} 条变化将在下次重试", args.size(), e);
+            for (int i = 0; i < drained.size(); i++) {
+                drained.get(i).pending.addAndGet(deltas.get(i));
+                dirty.add(drained.get(i));
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    private long apply(Entry entry, long delta) {
+        long current;
+        long next;
+        do {
+            current = entry.onHand.get();
+            next = Math.max(current + delta, 0);
+        } while (!entry.onHand.compareAndSet(current, next));
+        
+        long applied = next - current;
+        if (applied != 0) {
+            entry.pending.addAndGet(applied);
+            dirty.add(entry);
+        }
+        // 只有跨过预警线的那一次扣减触发，已在线下的继续扣减不再重复
+        long level = entry.reorderLevel;
+        if (current >= level && next < level) {
+            reorderEngine.getObject().crossed(entry.id);
+        }
+        return applied;
+    }
+    
+    private Optional<Entry> resolve(String storeId, String fruit) {
+        String id = idsByStoreAndFruit.get(key(storeId, fruit));
+        if (id != null) {
+            return Optional.of(entries.get(id));
+        }
+        return inventoryRepository.findByStoreIdAndFruit(storeId, fruit).map(this::register);
+    }
+    
+    private Optional<Entry> resolve(String inventoryId) {
+        Entry entry = entries.get(inventoryId);
+        if (entry != null) {
+            return Optional.of(entry);
+        }
+        return inventoryRepository.findById(inventoryId).map(this::register);
+    }
+    
+    private Entry register(Inventory inventory) {
+        Entry entry = entries.computeIfAbsent(inventory.getId(),
+                id -> new Entry(id, toUnits(inventory.getOnHandKg()), toUnits(inventory.getReorderLevelKg())));
+        idsByStoreAndFruit.putIfAbsent(key(inventory.getStoreId(), inventory.getFruit()), inventory.getId());
+        return entry;
+    }
+    
+    // 不经账本时，条件更新后读回该行：扣减前在预警线及以上、扣减后在线下即为跨线。
+    // 扣减被截到0时扣减前的数量不可知，按扣减量推算，可能重复触发，由补货引擎按未完成的草稿去重
+    private void checkCrossing(String where, BigDecimal decrease, Object... args) {
+        jdbcTemplate.query("SELECT id, on_hand_kg, reorder_level_kg FROM inventory WHERE " + where, rs -> {
+            BigDecimal after = rs.getBigDecimal(2);
+            BigDecimal level = rs.getBigDecimal(3);
+            if (level != null && after.compareTo(level) < 0 && after.add(decrease).compareTo(level) >= 0) {
+                String id = rs.getString(1);
+                TransactionCallbacks.afterCommit(() -> reorderEngine.getObject().crossed(id));
+            }
+        }, args);
+    }
+    
+    private static String key(String storeId, String fruit) {
+        return storeId + "|" + fruit;
+    }
+    
+    private static long toUnits(BigDecimal kg) {
+        return kg == null ? 0 : kg.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+    
+    private static BigDecimal fromUnits(long units) {
+        return BigDecimal.valueOf(units, SCALE);
+    }
+    
+    private static final class Entry {
+        private final String id;
+        private final AtomicLong onHand;
+        private final AtomicLong pending = new AtomicLong();
+        private volatile long reorderLevel;
+        
+        private Entry(String id, long onHand, long reorderLevel) {
+            this.id = id;
+            this.onHand = new AtomicLong(onHand);
+            this.reorderLevel = reorderLevel;
+        }
+    }
+}
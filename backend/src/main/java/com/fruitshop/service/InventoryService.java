@@ -3,9 +3,11 @@ package com.fruitshop.service;
 import com.fruitshop.dto.AdjustmentRequest;
 import com.fruitshop.entity.Adjustment;
 import com.fruitshop.entity.Inventory;
+import com.fruitshop.exception.StoreAccessDeniedException;
 import com.fruitshop.repository.AdjustmentRepository;
 import com.fruitshop.repository.InventoryRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,6 +15,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
@@ -20,29 +23,33 @@ public class InventoryService {
     
     private final InventoryRepository inventoryRepository;
     private final AdjustmentRepository adjustmentRepository;
+    private final InventoryLedger inventoryLedger;
+    private final AuditService auditService;
     
     public List<Inventory> listByStore(String storeId) {
         return inventoryRepository.findByStoreId(storeId);
     }
     
     @Transactional
-    public Inventory updateReorderLevel(String inventoryId, BigDecimal level) {
-        Inventory inventory = inventoryRepository.findById(inventoryId)
-                .orElseThrow(() -> new RuntimeException("库存记录不存在"));
+    public Inventory updateReorderLevel(String inventoryId, BigDecimal level, Predicate<String> storeAccess) {
+        Inventory inventory = findAccessible(inventoryId, storeAccess);
         
         inventory.setReorderLevelKg(level);
-        return inventoryRepository.save(inventory);
+        try {
+            Inventory saved = inventoryRepository.saveAndFlush(inventory);
+            inventoryLedger.reorderLevelChanged(inventoryId, level);
+            return saved;
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new RuntimeException("库存记录已被他人修改，请刷新后重试");
+        }
     }
     
     @Transactional
-    public Adjustment createAdjustment(String inventoryId, AdjustmentRequest request) {
-        Inventory inventory = inventoryRepository.findById(inventoryId)
-                .orElseThrow(() -> new RuntimeException("库存记录不存在"));
+    public Adjustment createAdjustment(String inventoryId, AdjustmentRequest request, Predicate<String> storeAccess) {
+        findAccessible(inventoryId, storeAccess);
         
-        // 更新库存数量
-        BigDecimal newQty = inventory.getOnHandKg().add(request.getDeltaKg());
-        inventory.setOnHandKg(newQty.max(BigDecimal.ZERO));
-        inventoryRepository.save(inventory);
+        // 更新库存数量（经内存账本原子完成，异步回写）
+        inventoryLedger.adjust(inventoryId, request.getDeltaKg());
         
         // 创建调整记录
         Adjustment adjustment = new Adjustment();
@@ -52,7 +59,18 @@ public class InventoryService {
         adjustment.setDeltaKg(request.getDeltaKg());
         adjustment.setCreatedBy(request.getCreatedBy() != null ? request.getCreatedBy() : "系统");
         adjustment.setCreatedAt(LocalDateTime.now());
+        auditService.record("库存调整 " + request.getDeltaKg() + "kg", inventoryId);
         
         return adjustmentRepository.save(adjustment);
     }
+    
+    // 库存行所属门店须在 storeAccess 允许的范围内
+    private Inventory findAccessible(String inventoryId, Predicate<String> storeAccess) {
+        Inventory inventory = inventoryRepository.findById(inventoryId)
+                .orElseThrow(() -> new RuntimeException("库存记录不存在"));
+        if (!storeAccess.test(inventory.getStoreId())) {
+            throw new StoreAccessDeniedException("无权访问该门店的库存");
+        }
+        return inventory;
+    }
 }
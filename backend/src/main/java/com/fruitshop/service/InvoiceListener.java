@@ -0,0 +1,30 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Invoice;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 发票的 JPA 监听器，把状态和到期日的变化同步到 {@link InvoiceOverdueQueue}
+ */
+@Component
+@RequiredArgsConstructor
+public class InvoiceListener {
+    
+    private final ObjectProvider<InvoiceOverdueQueue> overdueQueue;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSave(Invoice invoice) {
+        overdueQueue.getObject().scheduleAfterCommit(invoice);
+    }
+    
+    @PostRemove
+    public void onRemove(Invoice invoice) {
+        overdueQueue.getObject().cancelAfterCommit(invoice.getId());
+    }
+}
@@ -0,0 +1,175 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Invoice;
+import com.fruitshop.repository.InvoiceJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 发票到期队列 - 待付发票按到期日分槽保存在内存中（以天为刻度的时间轮），
+ * 每天零点只取出已过到期日的槽，按批把这些发票改为 OVERDUE，处理量只与当天到期的发票数有关。
+ * 启动时按 (status, due_date) 索引重建，并立即补处理停机期间到期的发票
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvoiceOverdueQueue {
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final InvoiceJdbcRepository invoiceJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final SnapshotChangeLog changeLog;
+    private final AuditService auditService;
+    
+    @Value("${fruitshop.invoice.overdue-batch-size:500}")
+    private int batchSize;
+    
+    // 到期日 -> 发票ID；发票ID -> 到期日，用于改期和撤销
+    private final TreeMap<LocalDate, Set<String>> slots = new TreeMap<>();
+    private final Map<String, LocalDate> dueDates = new HashMap<>();
+    // 串行化逾期处理；队列本身由 this 保护，处理期间不持有，收银改发票不必等逾期事务
+    private final Object transitionLock = new Object();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (this) {
+            slots.clear();
+            dueDates.clear();
+            jdbcTemplate.query("SELECT id, due_date FROM invoices WHERE status = ? AND due_date IS NOT NULL",
+                    rs -> {
+                        put(rs.getString(1), rs.getDate(2).toLocalDate());
+                    }, Invoice.InvoiceStatus.PENDING.name());
+            log.info("发票到期队列已重建，{} 张待付发票，{} 个到期日", dueDates.size(), slots.size());
+        }
+        transitionDue();
+    }
+    
+    /**
+     * 发票保存后按最新状态入队或出队，事务提交后生效
+     */
+    public void scheduleAfterCommit(Invoice invoice) {
+        scheduleAllAfterCommit(Collections.singletonList(invoice));
+    }
+    
+    public void scheduleAllAfterCommit(Collection<Invoice> invoices) {
+        Map<String, LocalDate> changes = new HashMap<>();
+        for (Invoice invoice : invoices) {
+            changes.put(invoice.getId(),
+                    invoice.getStatus() == Invoice.InvoiceStatus.PENDING ? invoice.getDueDate() : null);
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                changes.forEach((id, dueDate) -> {
+                    remove(id);
+                    if (dueDate != null) {
+                        put(id, dueDate);
+                    }
+                });
+            }
+        });
+    }
+    
+    public void cancelAfterCommit(String id) {
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                remove(id);
+            }
+        });
+    }
+    
+    /**
+     * 把到期日早于今天的待付发票改为逾期，返回实际改动的行数。
+     * 更新时重新检查 status = PENDING 和到期日，期间已付款、已核销或改期的发票不受影响，
+     * 审计和快照变更也只记录实际改动的发票。
+     * 只在取出到期发票和出队时锁住队列，数据库事务期间入队、出队不受阻塞
+     */
+    @Scheduled(cron = "${fruitshop.invoice.overdue-cron:0 0 0 * * *}")
+    public int transitionDue() {
+        synchronized (transitionLock) {
+            return transitionDue(LocalDate.now());
+        }
+    }
+    
+    private int transitionDue(LocalDate today) {
+        Map<String, LocalDate> due = new HashMap<>();
+        synchronized (this) {
+            slots.headMap(today, false).forEach((dueDate, slot) -> slot.forEach(id -> due.put(id, dueDate)));
+        }
+        if (due.isEmpty()) {
+            return 0;
+        }
+        List<String> ids = new ArrayList<>(due.keySet());
+        
+        List<String> changed;
+        try {
+            changed = transactionTemplate.execute(status -> {
+                List<String> rows = new ArrayList<>();
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    rows.addAll(invoiceJdbcRepository.markOverdue(
+                            ids.subList(from, Math.min(from + batchSize, ids.size())), today));
+                }
+                if (!rows.isEmpty()) {
+                    changeLog.recordAllAfterCommit("invoices", rows);
+                    auditService.recordAll("发票逾期", rows);
+                }
+                return rows;
+            });
+        } catch (DataAccessException e) {
+            log.error("发票逾期处理失败，{} 张发票留待下次处理", ids.size(), e);
+            return 0;
+        }
+        
+        // 只有提交成功后才出队，失败时保留在队列中由下次调度重试；处理期间改期的发票已按新到期日入队，不出队
+        synchronized (this) {
+            due.forEach((id, dueDate) -> {
+                if (dueDate.equals(dueDates.get(id))) {
+                    remove(id);
+                }
+            });
+        }
+        log.info("{} 张发票已逾期（到期 {} 张）", changed.size(), ids.size());
+        return changed.size();
+    }
+    
+    public synchronized int size() {
+        return dueDates.size();
+    }
+    
+    private void put(String id, LocalDate dueDate) {
+        dueDates.put(id, dueDate);
+        slots.computeIfAbsent(dueDate, key -> new HashSet<>()).add(id);
+    }
+    
+    private void remove(String id) {
+        LocalDate dueDate = dueDates.remove(id);
+        if (dueDate == null) {
+            return;
+        }
+        Set<String> slot = slots.get(dueDate);
+        if (slot != null && slot.remove(id) && slot.isEmpty()) {
+            slots.remove(dueDate);
+        }
+    }
+}
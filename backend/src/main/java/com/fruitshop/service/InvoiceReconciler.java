@@ -0,0 +1,133 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.ReconciliationReport;
+import com.fruitshop.entity.Invoice;
+import com.fruitshop.repository.InvoiceJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 销售单与发票核对 - 由数据库按索引联查（销售单按门店和日期取区间，发票按 sales_order_id 对应），
+ * 结果以游标逐行流过，内存只保留一块待更新的发票ID和有上限的差异明细。
+ * 销售单ID和金额都一致的待付发票按块改为 MATCHED，每块一条 UPDATE 单独提交，不长时间占用连接
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InvoiceReconciler {
+    
+    private final InvoiceJdbcRepository invoiceJdbcRepository;
+    private final SnapshotChangeLog changeLog;
+    private final AuditService auditService;
+    private final InvoiceOverdueQueue overdueQueue;
+    
+    @Value("${fruitshop.invoice.reconcile-chunk-size:500}")
+    private int chunkSize;
+    
+    @Value("${fruitshop.invoice.reconcile-report-limit:1000}")
+    private int reportLimit;
+    
+    public ReconciliationReport reconcile(String storeId, LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new RuntimeException("核对日期区间无效");
+        }
+        long started = System.nanoTime();
+        Run run = new Run(storeId, from, to);
+        
+        invoiceJdbcRepository.streamSalesWithInvoices(storeId, from, to, run::onSale);
+        run.flush();
+        invoiceJdbcRepository.streamOrphanInvoices(storeId, from, to, run::onOrphan);
+        
+        ReconciliationReport report = run.report;
+        report.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        log.info("门店 {} 发票核对完成 {} ~ {}：扫描 {} 行，匹配 {} 张，差异 {} 条，耗时 {}ms", storeId, from, to,
+                report.getRowsScanned(), report.getMatched(), report.getDiscrepancyCount(), report.getElapsedMs());
+        return report;
+    }
+    
+    private static BigDecimal toAmount(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_UP);
+    }
+    
+    // 单次核对的状态
+    private final class Run {
+        private final ReconciliationReport report = new ReconciliationReport();
+        private final List<String> chunk = new ArrayList<>();
+        
+        private Run(String storeId, LocalDate from, LocalDate to) {
+            report.setStoreId(storeId);
+            report.setFrom(from);
+            report.setTo(to);
+        }
+        
+        // 列：销售单ID、门店、金额，发票ID、门店、金额、状态
+        private void onSale(ResultSet rs) throws SQLException {
+            report.setRowsScanned(report.getRowsScanned() + 1);
+            String salesOrderId = rs.getString(1);
+            BigDecimal salesAmount = toAmount(rs.getBigDecimal(3));
+            String invoiceId = rs.getString(4);
+            if (invoiceId == null) {
+                discrepancy(ReconciliationReport.DiscrepancyType.MISSING_INVOICE, salesOrderId, null, salesAmount, null);
+                return;
+            }
+            // 已匹配、已付款或已逾期的发票不在本次核对范围内
+            if (!Invoice.InvoiceStatus.PENDING.name().equals(rs.getString(7))) {
+                return;
+            }
+            BigDecimal invoiceAmount = toAmount(rs.getBigDecimal(6));
+            if (!rs.getString(2).equals(rs.getString(5))) {
+                discrepancy(ReconciliationReport.DiscrepancyType.STORE_MISMATCH, salesOrderId, invoiceId,
+                        salesAmount, invoiceAmount);
+            } else if (salesAmount == null || invoiceAmount == null || salesAmount.compareTo(invoiceAmount) != 0) {
+                discrepancy(ReconciliationReport.DiscrepancyType.AMOUNT_MISMATCH, salesOrderId, invoiceId,
+                        salesAmount, invoiceAmount);
+            } else {
+                chunk.add(invoiceId);
+                if (chunk.size() >= chunkSize) {
+                    flush();
+                }
+            }
+        }
+        
+        private void onOrphan(ResultSet rs) throws SQLException {
+            report.setRowsScanned(report.getRowsScanned() + 1);
+            discrepancy(ReconciliationReport.DiscrepancyType.MISSING_SALE, rs.getString(2), rs.getString(1),
+                    null, toAmount(rs.getBigDecimal(3)));
+        }
+        
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<String> ids = List.copyOf(chunk);
+            chunk.clear();
+            report.setMatched(report.getMatched()
+                    + invoiceJdbcRepository.updateStatus(ids, Invoice.InvoiceStatus.PENDING, Invoice.InvoiceStatus.MATCHED));
+            changeLog.recordAllAfterCommit("invoices", ids);
+            auditService.recordAll("发票匹配销售单", ids);
+            ids.forEach(overdueQueue::cancelAfterCommit);
+        }
+        
+        private void discrepancy(ReconciliationReport.DiscrepancyType type, String salesOrderId, String invoiceId,
+                                 BigDecimal salesAmount, BigDecimal invoiceAmount) {
+            report.setDiscrepancyCount(report.getDiscrepancyCount() + 1);
+            if (report.getDiscrepancies().size() < reportLimit) {
+                report.getDiscrepancies().add(new ReconciliationReport.Discrepancy(
+                        type, salesOrderId, invoiceId, salesAmount, invoiceAmount));
+            } else {
+                report.setTruncated(true);
+            }
+        }
+    }
+}
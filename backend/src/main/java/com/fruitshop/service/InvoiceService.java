@@ -1,29 +1,80 @@
 package com.fruitshop.service;
 
+import com.fruitshop.dto.BulkStatusRequest;
+import com.fruitshop.dto.BulkStatusResponse;
+import com.fruitshop.entity.AgingBucket;
 import com.fruitshop.entity.Invoice;
+import com.fruitshop.exception.StoreAccessDeniedException;
 import com.fruitshop.repository.InvoiceRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
 public class InvoiceService {
     
+    private static final BulkStatusUpdater.Target BULK_TARGET =
+            new BulkStatusUpdater.Target("invoices", "发票", "due_date", null);
+    
     private final InvoiceRepository invoiceRepository;
+    private final AuditService auditService;
+    private final AgingHistogram agingHistogram;
+    private final InvoiceOverdueQueue overdueQueue;
+    private final SnapshotChangeLog changeLog;
+    private final BulkStatusUpdater bulkStatusUpdater;
     
     public List<Invoice> listByStore(String storeId) {
         return invoiceRepository.findByStoreId(storeId);
     }
     
+    /**
+     * 门店应收（发票）和应付（采购单）的实时账龄
+     */
+    public List<AgingBucket> aging(String storeId) {
+        return agingHistogram.buckets(storeId);
+    }
+    
+    /**
+     * 变更单张发票状态，发票所属门店须在 storeAccess 允许的范围内
+     */
     @Transactional
-    public Invoice updateStatus(String invoiceId, String status) {
+    public Invoice updateStatus(String invoiceId, String status, Predicate<String> storeAccess) {
         Invoice invoice = invoiceRepository.findById(invoiceId)
                 .orElseThrow(() -> new RuntimeException("发票不存在"));
+        if (!storeAccess.test(invoice.getStoreId())) {
+            throw new StoreAccessDeniedException("无权访问该门店的发票");
+        }
         
         invoice.setStatus(Invoice.InvoiceStatus.valueOf(status.toUpperCase()));
+        auditService.record("发票状态变更为 " + invoice.getStatus(), invoiceId);
         return invoiceRepository.save(invoice);
     }
+    
+    /**
+     * 按ID列表或门店内的到期日区间（可选只改 fromStatus 状态的发票）批量变更发票状态，
+     * 逾期队列和应收账龄按改动后的发票同步
+     */
+    public BulkStatusResponse updateStatusAll(String storeId, BulkStatusRequest request) {
+        Invoice.InvoiceStatus status = parseStatus(request.getStatus());
+        String fromStatus = request.getFromStatus() != null ? parseStatus(request.getFromStatus()).name() : null;
+        return bulkStatusUpdater.update(BULK_TARGET, storeId, request, fromStatus, status.name(), ids -> {
+            List<Invoice> invoices = invoiceRepository.findAllById(ids);
+            overdueQueue.scheduleAllAfterCommit(invoices);
+            agingHistogram.invoicesChanged(invoices);
+            changeLog.recordAllAfterCommit("invoices", ids);
+            auditService.recordAll("发票状态变更为 " + status, ids);
+        });
+    }
+    
+    private static Invoice.InvoiceStatus parseStatus(String status) {
+        try {
+            return Invoice.InvoiceStatus.valueOf(status.toUpperCase());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的发票状态: " + status);
+        }
+    }
 }
@@ -0,0 +1,266 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.PaymentMethod;
+import com.fruitshop.entity.SalesOrder;
+import com.fruitshop.entity.WalletEntry;
+import com.fruitshop.repository.SystemParameterRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会员消费累计 - 销售单提交后只在内存中给会员的待写消费额加一笔（无锁），
+ * 定时任务把同一会员在一个周期内的多笔消费合并成一条 UPDATE，积分按 POINTS_RATE 同时累加。
+ * 只有累计消费跨过等级门槛时才额外更新等级。每晚从销售单重新汇总累计消费并据此核对等级，
+ * 兜底修正进程退出时丢失的待写消费等偏差。积分只增量累计：已抵扣的积分和历史 POINTS_RATE 无法从销售单还原，
+ * 核对时不动积分，以钱包流水为准。返还的积分与会员更新在同一事务内写入钱包流水
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MemberAccrual {
+    
+    // 金额以分为单位，与 DECIMAL(12,2) 精度一致
+    private static final int SCALE = 2;
+    // 1 积分抵 0.01 元；POINTS_RATE 是返还积分的金额比例，0.01 即消费 1 元积 1 分
+    static final BigDecimal POINT_VALUE = new BigDecimal("0.01");
+    private static final String POINTS_RATE = "POINTS_RATE";
+    private static final String[] TIERS = {"铜牌会员", "银牌会员", "金牌会员"};
+    
+    private static final String ACCRUE_SQL =
+            "UPDATE members SET total_spend = total_spend + ?, points = points + ? WHERE id = ?";
+    private static final String ACCRUE_WITH_TIER_SQL =
+            "UPDATE members SET total_spend = total_spend + ?, points = points + ?, level = ?, tier = ? WHERE id = ?";
+    
+    // 与 accrueAll 的计入条件一致：指定了会员、非积分支付、数量和单价齐全，每单按分四舍五入
+    private static final String SALES_SPEND_SQL = "COALESCE((SELECT SUM(ROUND(s.quantity_kg * s.unit_price, 2)) "
+            + "FROM sales_orders s WHERE s.customer_id = members.id "
+            + "AND (s.payment_method IS NULL OR s.payment_method <> 'POINTS') "
+            + "AND s.quantity_kg IS NOT NULL AND s.unit_price IS NOT NULL), 0)";
+    private static final String RECOMPUTE_SPEND_SQL = "UPDATE members SET total_spend = " + SALES_SPEND_SQL
+            + " WHERE total_spend IS NULL OR total_spend <> " + SALES_SPEND_SQL;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final SystemParameterRepository parameterRepository;
+    private final MemberWallet memberWallet;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${fruitshop.member.silver-spend:2000}")
+    private BigDecimal silverSpend;
+    
+    @Value("${fruitshop.member.gold-spend:10000}")
+    private BigDecimal goldSpend;
+    
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Entry> dirty = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 累计一笔会员消费，事务提交后生效。用积分支付的部分不再返积分，也不计入消费额
+     */
+    public void accrue(SalesOrder order) {
+        accrueAll(Collections.singletonList(order));
+    }
+    
+    public void accrueAll(Collection<SalesOrder> orders) {
+        List<SalesOrder> eligible = new ArrayList<>();
+        for (SalesOrder order : orders) {
+            if (order.getCustomerId() != null && !order.getCustomerId().isBlank()
+                    && order.getPaymentMethod() != PaymentMethod.POINTS
+                    && order.getQuantityKg() != null && order.getUnitPrice() != null) {
+                eligible.add(order);
+            }
+        }
+        if (eligible.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            for (SalesOrder order : eligible) {
+                Entry entry = entries.computeIfAbsent(order.getCustomerId(), Entry::new);
+                entry.pendingSpend.addAndGet(toCents(order.getQuantityKg().multiply(order.getUnitPrice())));
+                dirty.add(entry);
+            }
+        });
+    }
+    
+    @Scheduled(fixedDelayString = "${fruitshop.member.accrual-flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        
+        List<Entry> drained = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        for (Iterator<Entry> it = dirty.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            // 先移出脏集合再取走增量，期间到达的新消费会把自己重新加入
+            it.remove();
+            long delta = entry.pendingSpend.getAndSet(0);
+            if (delta != 0) {
+                drained.add(entry);
+                deltas.add(delta);
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+        
+        try {
+            loadUnknown(drained);
+            BigDecimal rate = pointsRate();
+            List<Object[]> plain = new ArrayList<>();
+            List<Object[]> crossing = new ArrayList<>();
+            List<WalletEntry> credits = new ArrayList<>();
+            for (int i = 0; i < drained.size(); i++) {
+                Entry entry = drained.get(i);
+                if (entry.spend < 0) {
+                    // 会员不存在，丢弃这部分消费
+                    entries.remove(entry.id);
+                    continue;
+                }
+                BigDecimal spend = fromCents(deltas.get(i));
+                BigDecimal points = spend.multiply(rate).divide(POINT_VALUE, SCALE, RoundingMode.DOWN);
+                if (points.signum() > 0) {
+                    credits.add(MemberWallet.entry(entry.id, WalletEntry.Account.POINTS, points, null, "消费积分"));
+                }
+                int level = levelFor(entry.spend + deltas.get(i));
+                if (level != entry.level) {
+                    crossing.add(new Object[]{spend, points, level, TIERS[level - 1], entry.id});
+                } else {
+                    plain.add(new Object[]{spend, points, entry.id});
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!plain.isEmpty()) {
+                    jdbcTemplate.batchUpdate(ACCRUE_SQL, plain);
+                }
+                if (!crossing.isEmpty()) {
+                    jdbcTemplate.batchUpdate(ACCRUE_WITH_TIER_SQL, crossing);
+                }
+                memberWallet.appendAll(credits);
+            });
+            if (!crossing.isEmpty()) {
+                log.info("{} 位会员等级变化", crossing.size());
+            }
+            for (int i = 0; i < drained.size(); i++) {
+                Entry entry = drained.get(i);
+                if (entry.spend >= 0) {
+                    entry.spend += deltas.get(i);
+                    entry.level = levelFor(entry.spend);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.error("会员消费累计回写失败，{} 位会员的消费将在下次重试", drained.size(), e);
+            for (int i = 0; i < drained.size(); i++) {
+                drained.get(i).pendingSpend.addAndGet(deltas.get(i));
+                dirty.add(drained.get(i));
+            }
+        }
+    }
+    
+    /**
+     * 从销售单重新汇总全部会员的累计消费，再按累计消费核对等级，并清空缓存的累计值，下次累计时重新加载。
+     * 核对期间提交的销售单可能被汇总和增量各计一次，偏差在下一次核对时修正
+     */
+    @Scheduled(cron = "${fruitshop.member.tier-recompute-cron:0 0 4 * * *}")
+    public synchronized int recomputeTiers() {
+        flush();
+        int respent = jdbcTemplate.update(RECOMPUTE_SPEND_SQL);
+        int changed = jdbcTemplate.update("UPDATE members SET "
+                + "level = CASE WHEN total_spend >= ? THEN 3 WHEN total_spend >= ? THEN 2 ELSE 1 END, "
+                + "tier = CASE WHEN total_spend >= ? THEN ? WHEN total_spend >= ? THEN ? ELSE ? END "
+                + "WHERE level IS NULL OR tier IS NULL OR level <> CASE WHEN total_spend >= ? THEN 3 "
+                + "WHEN total_spend >= ? THEN 2 ELSE 1 END OR tier NOT IN (?, ?, ?)",
+                goldSpend, silverSpend,
+                goldSpend, TIERS[2], silverSpend, TIERS[1], TIERS[0],
+                goldSpend, silverSpend, TIERS[0], TIERS[1], TIERS[2]);
+        entries.values().removeIf(entry -> entry.pendingSpend.get() == 0);
+        // 还有待写消费的会员保留在表中，但缓存的累计值已过期，下次回写前重新加载
+        entries.values().forEach(entry -> {
+            entry.loaded = false;
+            entry.spend = -1;
+        });
+        log.info("会员累计消费全量核对完成，修正累计消费 {} 位、等级 {} 位", respent, changed);
+        return changed;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    int levelFor(long spendCents) {
+        BigDecimal spend = fromCents(spendCents);
+        if (spend.compareTo(goldSpend) >= 0) {
+            return 3;
+        }
+        return spend.compareTo(silverSpend) >= 0 ? 2 : 1;
+    }
+    
+    // 首次累计的会员从数据库取当前累计消费和等级，之后以内存值判断是否跨过门槛
+    private void loadUnknown(List<Entry> drained) {
+        List<Entry> unknown = drained.stream().filter(entry -> !entry.loaded).toList();
+        if (unknown.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(unknown.size(), "?"));
+        jdbcTemplate.query("SELECT id, total_spend, level FROM members WHERE id IN (" + placeholders + ")", rs -> {
+            Entry entry = entries.get(rs.getString(1));
+            if (entry != null) {
+                entry.spend = toCents(rs.getBigDecimal(2));
+                entry.level = rs.getInt(3);
+            }
+        }, unknown.stream().map(entry -> entry.id).toArray());
+        unknown.forEach(entry -> entry.loaded = true);
+    }
+    
+    private BigDecimal pointsRate() {
+        return parameterRepository.findById(POINTS_RATE)
+                .map(param -> {
+                    try {
+                        return new BigDecimal(param.getParamValue().trim());
+                    } catch (RuntimeException e) {
+                        log.warn("POINTS_RATE 参数无效: {}，本次不累计积分", param.getParamValue());
+                        return BigDecimal.ZERO;
+                    }
+                })
+                .orElse(BigDecimal.ZERO);
+    }
+    
+    private static long toCents(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+    
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+    
+    private static final class Entry {
+        private final String id;
+        private final AtomicLong pendingSpend = new AtomicLong();
+        // 以下字段只在 flush（持有锁）中读写；spend 为 -1 表示会员不存在
+        private boolean loaded;
+        private long spend = -1;
+        private int level;
+        
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+}
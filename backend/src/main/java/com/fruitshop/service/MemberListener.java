@@ -0,0 +1,30 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Member;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会员的 JPA 监听器，把姓名和手机号的变化同步到 {@link MemberSearchIndex}
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberListener {
+    
+    private final ObjectProvider<MemberSearchIndex> memberSearchIndex;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSave(Member member) {
+        memberSearchIndex.getObject().updateAfterCommit(member);
+    }
+    
+    @PostRemove
+    public void onRemove(Member member) {
+        memberSearchIndex.getObject().removeAfterCommit(member.getId());
+    }
+}
@@ -0,0 +1,431 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Member;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 会员搜索内存索引 - 手机号按数字三元组、姓名按单字、姓名拼音首字母按二元组建倒排表，
+ * 另按 (首个片段, 值长度) 建前缀表。结果按 完全匹配 > 前缀 > 包含、短值优先排序：
+ * 先按长度顺序把前缀表与片段倒排表求交集，凑够条数即返回；不够时再对包含匹配求交集并逐个核对。
+ * <p>
+ * 会员每次变化分配新的文档号，旧文档号只做删除标记，倒排表始终按文档号递增、只追加；
+ * 删除标记过半时整体压缩。启动时从数据库重建，之后随 JPA 事务提交增量更新，
+ * 绕过 JPA 的批量 SQL 修改姓名或手机号后需调用 {@link #rebuild()}
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MemberSearchIndex {
+    
+    private static final long PHONE = 1L << 48;
+    private static final long NAME = 2L << 48;
+    private static final long INITIALS = 3L << 48;
+    private static final long PREFIX = 1L << 50;
+    private static final int MAX_PREFIX_LENGTH = 255;
+    
+    private static final int PHONE_GRAM = 3;
+    private static final int INITIALS_GRAM = 2;
+    private static final int MAX_INTERSECT = 3;
+    
+    // GB2312 一级汉字按拼音排序，各声母首字的区位码（没有 i、u、v 开头的拼音）
+    private static final Charset GB2312 = Charset.forName("GB2312");
+    private static final int[] PINYIN_BOUNDARIES = {
+            0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC, 0xC2E8,
+            0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1, 0xD7FA};
+    private static final char[] PINYIN_LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final Map<String, Integer> docsByMember = new HashMap<>();
+    private String[] memberIds = new String[1024];
+    private String[] phones = new String[1024];
+    private String[] names = new String[1024];
+    private String[] initials = new String[1024];
+    // 各字段出现过的最大值长度，按字段标记索引
+    private final int[] maxLengths = new int[4];
+    private int nextDoc;
+    private volatile boolean ready;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<String[]> rows = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, name, phone FROM members", rs -> {
+            rows.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+        });
+        lock.writeLock().lock();
+        try {
+            clear();
+            for (String[] row : rows) {
+                add(row[0], row[1], row[2]);
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("会员搜索索引已重建，共 {} 人，{} 个倒排表", rows.size(), postings.size());
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * 事务提交后更新索引，回滚的修改不会进入索引
+     */
+    public void updateAfterCommit(Member member) {
+        String id = member.getId();
+        String name = member.getName();
+        String phone = member.getPhone();
+        TransactionCallbacks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(id);
+                add(id, name, phone);
+                compactIfSparse();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    public void removeAfterCommit(String memberId) {
+        TransactionCallbacks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(memberId);
+                compactIfSparse();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    /**
+     * 按手机号片段、姓名片段或姓名拼音首字母查找，返回排序后的会员ID，至多 limit 个。
+     * 手机号至少3位、拼音首字母至少2位才查询，更短的输入区分度太低
+     */
+    public List<String> search(String keyword, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            if (isDigits(query)) {
+                return query.length() < PHONE_GRAM ? List.of() : match(PHONE, query, phones, limit);
+            }
+            if (isLetters(query)) {
+                return query.length() < INITIALS_GRAM ? List.of() : match(INITIALS, query, initials, limit);
+            }
+            return match(NAME, query, names, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private List<String> match(long field, String query, String[] values, int limit) {
+        // 任何匹配都包含查询串的全部片段；只用最短的几个表求交集，剩下的片段交给字符串核对
+        PostingList[] lists = lookup(field, query);
+        if (lists == null) {
+            return List.of();
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        lists = Arrays.copyOf(lists, Math.min(lists.length, MAX_INTERSECT));
+        List<String> result = new ArrayList<>(limit);
+        
+        // 第一轮：以查询串开头的值。前缀表按 (首个片段, 值长度) 分开存放，从短到长依次与片段表求交集，
+        // 取出的顺序就是 完全匹配 > 前缀、短值优先 的最终顺序，凑够 limit 即返回
+        long first = grams(field, query).get(0);
+        int maxLength = maxLengths[(int) (field >>> 48)];
+        for (int length = query.length(); length <= maxLength && result.size() < limit; length++) {
+            PostingList prefix = postings.get(prefixKey(first, length));
+            if (prefix == null) {
+                continue;
+            }
+            PostingList[] withPrefix = Arrays.copyOf(lists, lists.length + 1);
+            withPrefix[lists.length] = prefix;
+            Arrays.sort(withPrefix, (a, b) -> Integer.compare(a.size, b.size));
+            intersect(withPrefix, doc -> {
+                if (memberIds[doc] != null && values[doc].startsWith(query)) {
+                    result.add(memberIds[doc]);
+                }
+                return result.size() < limit;
+            });
+        }
+        // 没有比查询串更长的值时不可能有中间包含的匹配，完整手机号查询在这里结束
+        if (result.size() == limit || query.length() >= maxLength) {
+            return result;
+        }
+        
+        // 第二轮：值中间包含查询串的，按值长度、文档号取剩余名额；大根堆堆顶是当前最差的结果
+        int remaining = limit - result.size();
+        PriorityQueue<long[]> top = new PriorityQueue<>((a, b) -> Long.compare(b[0], a[0]));
+        intersect(lists, doc -> {
+            String value = values[doc];
+            if (memberIds[doc] == null || value.startsWith(query) || value.indexOf(query, 1) < 0) {
+                return true;
+            }
+            long score = ((long) value.length() << 32) | doc;
+            if (top.size() < remaining) {
+                top.add(new long[]{score});
+            } else if (score < top.peek()[0]) {
+                top.poll();
+                top.add(new long[]{score});
+            }
+            return true;
+        });
+        
+        String[] infix = new String[top.size()];
+        for (int i = infix.length - 1; i >= 0; i--) {
+            infix[i] = memberIds[(int) top.poll()[0]];
+        }
+        result.addAll(Arrays.asList(infix));
+        return result;
+    }
+    
+    /**
+     * 按文档号递增回调同时出现在所有表中的文档，lists 需按长度升序；回调返回 false 时停止
+     */
+    private static void intersect(PostingList[] lists, IntPredicate visitor) {
+        PostingList smallest = lists[0];
+        int[] cursors = new int[lists.length];
+        candidates:
+        for (int i = 0; i < smallest.size; i++) {
+            int doc = smallest.docs[i];
+            for (int l = 1; l < lists.length; l++) {
+                cursors[l] = lists[l].seek(doc, cursors[l]);
+                if (cursors[l] == lists[l].size) {
+                    return;
+                }
+                if (lists[l].docs[cursors[l]] != doc) {
+                    continue candidates;
+                }
+            }
+            if (!visitor.test(doc)) {
+                return;
+            }
+        }
+    }
+    
+    // 查询串拆成的全部倒排表，任一不存在时不可能有结果
+    private PostingList[] lookup(long field, String query) {
+        List<Long> keys = grams(field, query);
+        PostingList[] lists = new PostingList[keys.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(keys.get(i));
+            if (lists[i] == null) {
+                return null;
+            }
+        }
+        return lists;
+    }
+    
+    private void add(String memberId, String name, String phone) {
+        int doc = nextDoc++;
+        if (doc == memberIds.length) {
+            int capacity = memberIds.length * 2;
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            phones = Arrays.copyOf(phones, capacity);
+            names = Arrays.copyOf(names, capacity);
+            initials = Arrays.copyOf(initials, capacity);
+        }
+        memberIds[doc] = memberId;
+        phones[doc] = phone != null ? digitsOf(phone) : null;
+        names[doc] = name != null ? normalize(name) : null;
+        initials[doc] = name != null ? initialsOf(name) : null;
+        docsByMember.put(memberId, doc);
+        
+        index(doc, PHONE, phones[doc]);
+        index(doc, NAME, names[doc]);
+        index(doc, INITIALS, initials[doc]);
+    }
+    
+    private void index(int doc, long field, String value) {
+        if (value == null) {
+            return;
+        }
+        List<Long> keys = grams(field, value);
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (Long key : keys) {
+            postings.computeIfAbsent(key, k -> new PostingList()).add(doc);
+        }
+        postings.computeIfAbsent(prefixKey(keys.get(0), value.length()), k -> new PostingList()).add(doc);
+        int slot = (int) (field >>> 48);
+        maxLengths[slot] = Math.max(maxLengths[slot], Math.min(value.length(), MAX_PREFIX_LENGTH));
+    }
+    
+    // 前缀表的键：首个片段加值长度，过长的值归入同一张表
+    private static long prefixKey(long firstGram, int length) {
+        return PREFIX | ((long) Math.min(length, MAX_PREFIX_LENGTH) << 52) | firstGram;
+    }
+    
+    private void remove(String memberId) {
+        Integer doc = docsByMember.remove(memberId);
+        if (doc != null) {
+            memberIds[doc] = null;
+        }
+    }
+    
+    private void compactIfSparse() {
+        if (nextDoc < 1024 || docsByMember.size() * 2 > nextDoc) {
+            return;
+        }
+        String[][] live = new String[docsByMember.size()][];
+        int count = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (memberIds[doc] != null) {
+                live[count++] = new String[]{memberIds[doc], names[doc], phones[doc]};
+            }
+        }
+        clear();
+        for (String[] row : live) {
+            add(row[0], row[1], row[2]);
+        }
+    }
+    
+    private void clear() {
+        postings.clear();
+        docsByMember.clear();
+        Arrays.fill(memberIds, null);
+        Arrays.fill(maxLengths, 0);
+        nextDoc = 0;
+    }
+    
+    // 同一字段内去重，否则同一文档会在一个倒排表中出现两次
+    private static List<Long> grams(long field, String value) {
+        int size = field == PHONE ? PHONE_GRAM : field == INITIALS ? INITIALS_GRAM : 1;
+        List<Long> keys = new ArrayList<>();
+        if (value.length() < size) {
+            return keys;
+        }
+        for (int i = 0; i + size <= value.length(); i++) {
+            long gram = 0;
+            for (int j = 0; j < size; j++) {
+                gram = (gram << 16) | value.charAt(i + j);
+            }
+            Long key = field | gram;
+            if (!keys.contains(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+    
+    private static String normalize(String keyword) {
+        if (keyword == null) {
+            return "";
+        }
+        String value = keyword.trim().toLowerCase(Locale.ROOT);
+        // 手机号常带空格或横线
+        String digits = value.replaceAll("[\\s-]", "");
+        return isDigits(digits) ? digits : value;
+    }
+    
+    private static String digitsOf(String phone) {
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+    
+    /**
+     * 姓名的拼音首字母，如 王先生 -> wxs。英文字母原样保留，GB2312 二级汉字等无法换算的字符跳过；
+     * 多音字只取 GB2312 排序所依据的读音
+     */
+    static String initialsOf(String name) {
+        StringBuilder letters = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                if (Character.isLetter(c)) {
+                    letters.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            byte[] bytes = String.valueOf(c).getBytes(GB2312);
+            if (bytes.length != 2) {
+                continue;
+            }
+            int code = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+            if (code < PINYIN_BOUNDARIES[0] || code >= PINYIN_BOUNDARIES[PINYIN_BOUNDARIES.length - 1]) {
+                continue;
+            }
+            int slot = Arrays.binarySearch(PINYIN_BOUNDARIES, code);
+            letters.append(PINYIN_LETTERS[slot >= 0 ? slot : -slot - 2]);
+        }
+        return letters.toString();
+    }
+    
+    private static boolean isDigits(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isLetters(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < 'a' || value.charAt(i) > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 文档号递增的倒排表，只追加
+     */
+    private static final class PostingList {
+        private int[] docs = new int[4];
+        private int size;
+        
+        private void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+        
+        // 从 from 开始找第一个不小于 doc 的位置，先倍增再二分
+        private int seek(int doc, int from) {
+            int step = 1;
+            int high = from;
+            while (high < size && docs[high] < doc) {
+                from = high;
+                high += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(docs, from, Math.min(high + 1, size), doc);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -1,28 +1,68 @@
 package com.fruitshop.service;
 
 import com.fruitshop.entity.Member;
+import com.fruitshop.entity.WalletEntry;
 import com.fruitshop.repository.MemberRepository;
+import com.fruitshop.repository.WalletEntryRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class MemberService {
     
     private final MemberRepository memberRepository;
+    private final MemberSearchIndex memberSearchIndex;
+    private final MemberWallet memberWallet;
+    private final WalletEntryRepository walletEntryRepository;
     
+    @Value("${fruitshop.member.search-limit:20}")
+    private int searchLimit;
+    
+    /**
+     * 先在内存索引中找出排好序的会员ID，再按主键取最新的会员数据（余额、积分随时在变，不放在索引里）
+     */
     public List<Member> search(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        return memberRepository.findByPhoneContainingOrNameContaining(keyword, keyword);
+        if (!memberSearchIndex.isReady()) {
+            return memberRepository.findByPhoneContainingOrNameContaining(keyword, keyword);
+        }
+        List<String> ids = memberSearchIndex.search(keyword, searchLimit);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Integer> order = ids.stream()
+                .collect(Collectors.toMap(Function.identity(), ids::indexOf));
+        return memberRepository.findAllById(ids).stream()
+                .sorted(Comparator.comparing(member -> order.get(member.getId())))
+                .collect(Collectors.toList());
     }
     
     public Optional<Member> findById(String memberId) {
         return memberRepository.findById(memberId);
     }
+    
+    @Transactional
+    public WalletEntry recharge(String memberId, BigDecimal amount) {
+        return memberWallet.credit(memberId, WalletEntry.Account.BALANCE, amount, null, "充值");
+    }
+    
+    public List<WalletEntry> listWallet(String memberId, Integer limit) {
+        int size = limit == null ? 50 : Math.min(Math.max(limit, 1), 500);
+        return walletEntryRepository.findByMemberIdOrderByAtDesc(memberId, PageRequest.of(0, size));
+    }
 }
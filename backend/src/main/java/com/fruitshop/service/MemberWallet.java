@@ -0,0 +1,108 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.WalletEntry;
+import com.fruitshop.repository.MemberRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 会员钱包 - 余额和积分的扣减、充值各是一条条件 UPDATE，只锁该会员一行，不同会员的收银互不阻塞；
+ * 同一会员在多个收银台同时支付时由行锁排队，余额不足的一方更新0行后被拒绝。
+ * 每次变动在同一事务内追加一条钱包流水，需在调用方事务内执行
+ */
+@Service
+@RequiredArgsConstructor
+public class MemberWallet {
+    
+    // 1 积分抵 0.01 元，与积分累计的换算一致
+    private static final BigDecimal POINT_VALUE = MemberAccrual.POINT_VALUE;
+    
+    private static final String INSERT_SQL =
+            "INSERT INTO wallet_ledger (id, member_id, account, amount, reference, reason, at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private final MemberRepository memberRepository;
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * 从余额或积分扣减；余额不足、积分不足或会员不存在时抛出异常，不做任何修改
+     */
+    public WalletEntry debit(String memberId, WalletEntry.Account account, BigDecimal amount,
+                             String reference, String reason) {
+        requirePositive(amount);
+        int updated = account == WalletEntry.Account.BALANCE
+                ? memberRepository.debitBalance(memberId, amount)
+                : memberRepository.debitPoints(memberId, amount);
+        if (updated == 0) {
+            if (!memberRepository.existsById(memberId)) {
+                throw new RuntimeException("会员不存在");
+            }
+            throw new RuntimeException(account == WalletEntry.Account.BALANCE ? "会员余额不足" : "会员积分不足");
+        }
+        return append(memberId, account, amount.negate(), reference, reason);
+    }
+    
+    public WalletEntry credit(String memberId, WalletEntry.Account account, BigDecimal amount,
+                              String reference, String reason) {
+        requirePositive(amount);
+        int updated = account == WalletEntry.Account.BALANCE
+                ? memberRepository.creditBalance(memberId, amount)
+                : memberRepository.creditPoints(memberId, amount);
+        if (updated == 0) {
+            throw new RuntimeException("会员不存在");
+        }
+        return append(memberId, account, amount, reference, reason);
+    }
+    
+    /**
+     * 按金额折算需要的积分，不足1分的部分向上取整
+     */
+    public static BigDecimal pointsFor(BigDecimal amount) {
+        return amount.divide(POINT_VALUE, 0, RoundingMode.CEILING);
+    }
+    
+    /**
+     * 批量追加已经生效的变动流水，供批量回写余额或积分的调用方使用
+     */
+    public void appendAll(List<WalletEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, entry.getId());
+            ps.setString(2, entry.getMemberId());
+            ps.setString(3, entry.getAccount().name());
+            ps.setBigDecimal(4, entry.getAmount());
+            ps.setString(5, entry.getReference());
+            ps.setString(6, entry.getReason());
+            ps.setTimestamp(7, Timestamp.valueOf(entry.getAt()));
+        });
+    }
+    
+    public static WalletEntry entry(String memberId, WalletEntry.Account account, BigDecimal amount,
+                                    String reference, String reason) {
+        String id = "wl-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        return new WalletEntry(id, memberId, account, amount, reference, reason, LocalDateTime.now());
+    }
+    
+    private WalletEntry append(String memberId, WalletEntry.Account account, BigDecimal amount,
+                               String reference, String reason) {
+        WalletEntry entry = entry(memberId, account, amount, reference, reason);
+        appendAll(Collections.singletonList(entry));
+        return entry;
+    }
+    
+    private static void requirePositive(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new RuntimeException("金额必须大于0");
+        }
+    }
+}
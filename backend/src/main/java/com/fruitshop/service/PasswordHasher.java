@@ -0,0 +1,158 @@
+package com.fruitshop.service;
+
+import com.fruitshop.exception.ServiceBusyException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 密码哈希 - BCrypt 计算放在独立的定长线程池里，Web 线程只等待结果，交班时集中登录也不会占满 CPU 拖慢收银接口。
+ * 准入控制按单次哈希的平均耗时估算新请求要排多久，超过排队预算才在入队前拒绝（503）。
+ * 预算要能装下一次交班的集中登录：被拒的请求重试时排到队尾，拒得越早尾延迟反而越长；
+ * 调用方最长等待 wait-timeout-ms，应大于预算加一次哈希的耗时，否则会算出没人要的结果。
+ * 库中仍是明文的旧密码按常量时间比较，登录成功后由调用方改写为哈希
+ */
+@Slf4j
+@Component
+public class PasswordHasher {
+    
+    private static final String BCRYPT_PREFIX = "$2";
+    private static final String BUSY_MESSAGE = "登录请求较多，请稍后重试";
+    
+    @Value("${fruitshop.auth.password.bcrypt-strength:10}")
+    private int strength;
+    
+    @Value("${fruitshop.auth.password.pool-size:0}")
+    private int poolSize;
+    
+    @Value("${fruitshop.auth.password.queue-capacity:256}")
+    private int queueCapacity;
+    
+    @Value("${fruitshop.auth.password.queue-wait-budget-ms:10000}")
+    private long queueWaitBudgetMs;
+    
+    @Value("${fruitshop.auth.password.wait-timeout-ms:15000}")
+    private long waitTimeoutMs;
+    
+    private final LongAdder rejected = new LongAdder();
+    // 单次哈希耗时的指数移动平均
+    private final AtomicLong averageNanos = new AtomicLong();
+    private int threads;
+    private BCryptPasswordEncoder encoder;
+    private ThreadPoolExecutor executor;
+    // 账号不存在时拿来比较的哈希，让响应时间与账号存在时一致
+    private String dummyHash;
+    
+    @PostConstruct
+    public void init() {
+        // 默认只用一半的核，其余留给 Tomcat 和收银接口
+        threads = poolSize > 0 ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger sequence = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        encoder = new BCryptPasswordEncoder(strength);
+        long start = System.nanoTime();
+        dummyHash = encoder.encode("fruitshop");
+        averageNanos.set(System.nanoTime() - start);
+        log.info("密码哈希线程池已启动，{} 个线程，队列 {}，BCrypt 强度 {}", threads, queueCapacity, strength);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    public String hash(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            throw new RuntimeException("密码不能为空");
+        }
+        return submit(() -> encoder.encode(raw));
+    }
+    
+    /**
+     * stored 为 null 表示账号不存在，仍做一次哈希比较后返回 false
+     */
+    public boolean matches(String raw, String stored) {
+        String password = raw != null ? raw : "";
+        if (stored == null) {
+            submit(() -> encoder.matches(password, dummyHash));
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        return submit(() -> encoder.matches(password, stored));
+    }
+    
+    /**
+     * 明文旧密码或强度低于当前配置的哈希需要在登录成功后重新计算
+     */
+    public boolean needsRehash(String stored) {
+        return !isHashed(stored) || encoder.upgradeEncoding(stored);
+    }
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    private static boolean isHashed(String stored) {
+        return stored.startsWith(BCRYPT_PREFIX);
+    }
+    
+    private <T> T submit(Callable<T> task) {
+        // 排在前面的任务都算完、轮到这个任务开始计算之前的等待
+        long ahead = executor.getQueue().size() + executor.getActiveCount() - threads + 1;
+        if (ahead > 0 && ahead * averageNanos.get() / threads > TimeUnit.MILLISECONDS.toNanos(queueWaitBudgetMs)) {
+            rejected.increment();
+            throw new ServiceBusyException(BUSY_MESSAGE);
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                T result = task.call();
+                long elapsed = System.nanoTime() - start;
+                averageNanos.accumulateAndGet(elapsed, (average, sample) -> average + (sample - average) / 8);
+                return result;
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceBusyException(BUSY_MESSAGE);
+        }
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 还在排队的任务取消后不会再执行
+            future.cancel(false);
+            rejected.increment();
+            throw new ServiceBusyException(BUSY_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new ServiceBusyException(BUSY_MESSAGE);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("密码哈希计算失败", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.TokenClaims;
+import com.fruitshop.entity.RoleMatrix;
+import com.fruitshop.entity.User;
+import com.fruitshop.repository.RoleMatrixRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 权限引擎 - 把角色矩阵编译成位图：每个权限串分配一个整数ID，每个角色一个 long[] 掩码，
+ * 数据域编译成每个角色一个"全部门店"标记。检查时读一次 volatile 引用后做位运算，不分配对象。
+ * <p>
+ * 权限写法为 模块 或 模块:操作（也接受 模块.操作），可带 @门店ID，如 sales:create@store-2。
+ * 授予"模块"即拥有该模块全部操作；检查"模块"本身只认模块级授权。
+ * 权限ID只增不删，角色矩阵变化后重新编译整张表并整体替换，已编译的 {@link Permission} 始终有效
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PermissionEngine {
+    
+    // 数据域：all 可访问全部门店，store（或未配置）只能访问用户名下门店
+    private static final String ALL_STORES = "all";
+    private static final int MAX_CACHED_EXPRESSIONS = 4096;
+    
+    private final RoleMatrixRepository roleMatrixRepository;
+    
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ConcurrentHashMap<String, Permission> expressions = new ConcurrentHashMap<>();
+    private volatile Compiled compiled = Compiled.empty();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reload() {
+        List<RoleMatrix> matrix = roleMatrixRepository.findAll();
+        Compiled next = Compiled.empty();
+        for (RoleMatrix entry : matrix) {
+            int role = entry.getRole().ordinal();
+            BitSet bits = new BitSet();
+            for (String permission : entry.getPermissions()) {
+                bits.set(intern(normalize(permission)));
+            }
+            next.masks[role] = bits.toLongArray();
+            next.allStores[role] = entry.getDataDomains().contains(ALL_STORES);
+            next.permissions.set(role, List.copyOf(entry.getPermissions()));
+        }
+        compiled = next;
+        log.info("角色矩阵已编译，{} 个角色，{} 个权限", matrix.size(), ids.size());
+    }
+    
+    /**
+     * 角色矩阵在事务中修改时，提交后再重新编译；同一事务改多行只编译一次
+     */
+    public void reloadAfterCommit() {
+        TransactionCallbacks.afterCommitOnce(this, this::reload);
+    }
+    
+    /**
+     * 解析权限表达式。热路径应在启动时编译好并保存返回值；重复的表达式会命中缓存
+     */
+    public Permission permission(String expression) {
+        Permission cached = expressions.get(expression);
+        if (cached != null) {
+            return cached;
+        }
+        int at = expression.indexOf('@');
+        String name = normalize(at < 0 ? expression : expression.substring(0, at));
+        String storeId = at < 0 ? null : expression.substring(at + 1);
+        int separator = name.indexOf(':');
+        Permission permission = separator < 0
+                ? new Permission(expression, intern(name), -1, storeId)
+                : new Permission(expression, intern(name.substring(0, separator)), intern(name), storeId);
+        if (expressions.size() < MAX_CACHED_EXPRESSIONS) {
+            expressions.putIfAbsent(expression, permission);
+        }
+        return permission;
+    }
+    
+    public boolean allows(User.UserRole role, Permission permission) {
+        long[] mask = compiled.masks[role.ordinal()];
+        return has(mask, permission.moduleId) || (permission.actionId >= 0 && has(mask, permission.actionId));
+    }
+    
+    /**
+     * 检查令牌持有者的权限；权限带门店时同时检查数据域
+     */
+    public boolean allows(TokenClaims claims, Permission permission) {
+        User.UserRole role = roleOf(claims);
+        if (role == null || !allows(role, permission)) {
+            return false;
+        }
+        return permission.storeId == null || canAccessStore(role, claims.getStoreIds(), permission.storeId);
+    }
+    
+    public boolean allows(TokenClaims claims, String expression) {
+        return allows(claims, permission(expression));
+    }
+    
+    public boolean canAccessStore(User.UserRole role, List<String> storeIds, String storeId) {
+        return compiled.allStores[role.ordinal()] || (storeIds != null && storeIds.contains(storeId));
+    }
+    
+    public boolean canAccessStore(TokenClaims claims, String storeId) {
+        User.UserRole role = roleOf(claims);
+        return role != null && canAccessStore(role, claims.getStoreIds(), storeId);
+    }
+    
+    /**
+     * 数据域是否覆盖全部门店，跨门店汇总的接口要求这一点
+     */
+    public boolean canAccessAllStores(TokenClaims claims) {
+        User.UserRole role = roleOf(claims);
+        return role != null && compiled.allStores[role.ordinal()];
+    }
+    
+    /**
+     * 按ID操作单据的服务取出单据后用它检查单据所属门店；未登录（关闭强制登录时）不限制门店
+     */
+    public Predicate<String> storeAccess(TokenClaims claims) {
+        return storeId -> claims == null || canAccessStore(claims, storeId);
+    }
+    
+    /**
+     * 角色矩阵中配置的原始权限列表，登录时返回给前端
+     */
+    public List<String> permissions(User.UserRole role) {
+        return compiled.permissions.get(role.ordinal());
+    }
+    
+    private int intern(String name) {
+        return ids.computeIfAbsent(name, key -> nextId.getAndIncrement());
+    }
+    
+    private static String normalize(String permission) {
+        String name = permission.trim();
+        int separator = name.indexOf('.');
+        if (separator >= 0 && name.indexOf(':') < 0) {
+            name = name.substring(0, separator) + ":" + name.substring(separator + 1);
+        }
+        return name;
+    }
+    
+    private static boolean has(long[] mask, int id) {
+        int word = id >>> 6;
+        return word < mask.length && (mask[word] & (1L << id)) != 0;
+    }
+    
+    private static User.UserRole roleOf(TokenClaims claims) {
+        if (claims.getRole() == null) {
+            return null;
+        }
+        try {
+            return User.UserRole.valueOf(claims.getRole());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 编译后的权限项：模块ID、操作ID（没有操作时为 -1）和可选的门店
+     */
+    public static final class Permission {
+        private final String expression;
+        private final int moduleId;
+        private final int actionId;
+        private final String storeId;
+        
+        private Permission(String expression, int moduleId, int actionId, String storeId) {
+            this.expression = expression;
+            this.moduleId = moduleId;
+            this.actionId = actionId;
+            this.storeId = storeId;
+        }
+        
+        @Override
+        public String toString() {
+            return expression;
+        }
+    }
+    
+    // 按角色序号索引，发布后不再修改
+    private static final class Compiled {
+        private final long[][] masks;
+        private final boolean[] allStores;
+        private final List<List<String>> permissions;
+        
+        private Compiled(int roles) {
+            masks = new long[roles][0];
+            allStores = new boolean[roles];
+            permissions = new ArrayList<>(Collections.nCopies(roles, List.of()));
+        }
+        
+        private static Compiled empty() {
+            return new Compiled(User.UserRole.values().length);
+        }
+    }
+}
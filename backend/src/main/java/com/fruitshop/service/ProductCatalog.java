@@ -0,0 +1,146 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.CatalogMetrics;
+import com.fruitshop.entity.Product;
+import com.fruitshop.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品目录缓存 - 进程内按ID缓存商品（读穿透），容量超限时淘汰最久未访问的条目，超过 TTL 的条目下次访问时重新加载。
+ * getAll 把未命中的ID合并成一条 IN 查询；不存在的ID同样缓存，POS 按名称传水果时不会每单都查一次库。
+ * 商品经 JPA 保存或删除后由 ProductListener 在事务提交后失效对应条目。
+ * 返回的是共享的实体对象（tags 已加载），调用方只读不改
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductCatalog {
+    
+    private final ProductRepository productRepository;
+    
+    @Value("${fruitshop.catalog.max-size:10000}")
+    private int maxSize;
+    
+    @Value("${fruitshop.catalog.ttl-seconds:300}")
+    private long ttlSeconds;
+    
+    // 访问顺序的 LinkedHashMap 即 LRU，读写都在 this 锁内
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 每次失效加一；加载期间发生过失效的结果不写入缓存，避免把旧数据放回去
+    private long invalidations;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    public Optional<Product> get(String id) {
+        return Optional.ofNullable(getAll(Collections.singletonList(id)).get(id));
+    }
+    
+    /**
+     * 批量取商品，返回 ID -> 商品，不存在的ID不在结果中
+     */
+    public Map<String, Product> getAll(Collection<String> ids) {
+        Map<String, Product> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        long generation;
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (String id : ids) {
+                if (id == null || found.containsKey(id) || missing.contains(id)) {
+                    continue;
+                }
+                Entry entry = entries.get(id);
+                if (entry != null && now - entry.loadedAt < TimeUnit.SECONDS.toNanos(ttlSeconds)) {
+                    hits.increment();
+                    if (entry.product != null) {
+                        found.put(id, entry.product);
+                    }
+                } else {
+                    misses.increment();
+                    missing.add(id);
+                }
+            }
+            generation = invalidations;
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        
+        loads.increment();
+        Map<String, Product> loaded = new HashMap<>();
+        for (Product product : productRepository.findByIdIn(missing)) {
+            loaded.put(product.getId(), product);
+        }
+        found.putAll(loaded);
+        synchronized (this) {
+            if (generation == invalidations) {
+                long now = System.nanoTime();
+                missing.forEach(id -> entries.put(id, new Entry(loaded.get(id), now)));
+                evict();
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * 商品保存或删除的事务提交后失效该条目；不在事务中时立即失效
+     */
+    public void invalidateAfterCommit(String id) {
+        TransactionCallbacks.afterCommit(() -> invalidate(id));
+    }
+    
+    public synchronized void invalidate(String id) {
+        invalidations++;
+        entries.remove(id);
+    }
+    
+    public CatalogMetrics metrics() {
+        CatalogMetrics metrics = new CatalogMetrics();
+        synchronized (this) {
+            metrics.setSize(entries.size());
+        }
+        metrics.setMaxSize(maxSize);
+        metrics.setTtlSeconds(ttlSeconds);
+        metrics.setHits(hits.sum());
+        metrics.setMisses(misses.sum());
+        metrics.setLoads(loads.sum());
+        metrics.setEvictions(evictions.sum());
+        long lookups = metrics.getHits() + metrics.getMisses();
+        metrics.setHitRate(lookups == 0 ? 0 : (double) metrics.getHits() / lookups);
+        return metrics;
+    }
+    
+    // 调用方持有锁
+    private void evict() {
+        List<String> eldest = new ArrayList<>();
+        int excess = entries.size() - maxSize;
+        for (String id : entries.keySet()) {
+            if (eldest.size() >= excess) {
+                break;
+            }
+            eldest.add(id);
+        }
+        eldest.forEach(entries::remove);
+        evictions.add(eldest.size());
+    }
+    
+    // product 为 null 表示该ID不存在
+    private record Entry(Product product, long loadedAt) {
+    }
+}
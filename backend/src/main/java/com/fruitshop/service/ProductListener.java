@@ -0,0 +1,33 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Product;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品的 JPA 监听器，保存或删除后失效 {@link ProductCatalog} 中的条目，并同步 {@link BarcodeIndex}
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductListener {
+    
+    private final ObjectProvider<ProductCatalog> productCatalog;
+    private final ObjectProvider<BarcodeIndex> barcodeIndex;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSave(Product product) {
+        productCatalog.getObject().invalidateAfterCommit(product.getId());
+        barcodeIndex.getObject().updateAfterCommit(product);
+    }
+    
+    @PostRemove
+    public void onRemove(Product product) {
+        productCatalog.getObject().invalidateAfterCommit(product.getId());
+        barcodeIndex.getObject().removeAfterCommit(product.getId());
+    }
+}
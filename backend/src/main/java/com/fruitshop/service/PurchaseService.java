@@ -1,37 +1,293 @@
 package com.fruitshop.service;
 
+import com.fruitshop.dto.BulkStatusRequest;
+import com.fruitshop.dto.BulkStatusResponse;
+import com.fruitshop.dto.PurchasePage;
 import com.fruitshop.dto.PurchaseRequest;
+import com.fruitshop.dto.PurchaseSummary;
 import com.fruitshop.entity.*;
+import com.fruitshop.exception.ApprovalDeniedException;
+import com.fruitshop.exception.StoreAccessDeniedException;
 import com.fruitshop.repository.*;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
 public class PurchaseService {
     
+    private static final BulkStatusUpdater.Target BULK_TARGET =
+            new BulkStatusUpdater.Target("purchase_orders", "采购单", "expected_date", null);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    
     private final PurchaseOrderRepository purchaseOrderRepository;
-    private final ProductRepository productRepository;
+    private final PurchaseOrderJdbcRepository purchaseOrderJdbcRepository;
+    private final ProductCatalog productCatalog;
     private final InventoryRepository inventoryRepository;
+    private final InventoryLedger inventoryLedger;
+    private final AuditService auditService;
+    private final AgingHistogram agingHistogram;
+    private final BulkStatusUpdater bulkStatusUpdater;
+    private final ApprovalEngine approvalEngine;
+    private final ApprovalInbox approvalInbox;
     
+    /**
+     * 完整列表（含明细行和时间线），集合按批加载，查询次数与单据的行数无关
+     */
+    @Transactional(readOnly = true)
     public List<PurchaseOrder> listByStore(String storeId) {
-        return purchaseOrderRepository.findByStoreIdOrderByExpectedDateDesc(storeId);
+        List<PurchaseOrder> orders = purchaseOrderRepository.findByStoreIdOrderByExpectedDateDesc(storeId);
+        orders.forEach(PurchaseService::withDetails);
+        return orders;
+    }
+    
+    /**
+     * 摘要的 keyset 分页：一条聚合查询，不加载明细行，游标记录上一页最后一行的 (expectedDate, id)
+     */
+    public PurchasePage listPage(String storeId, String status, LocalDate from, LocalDate to,
+                                 String cursor, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        PurchaseOrder.PurchaseStatus statusFilter = null;
+        if (status != null && !status.isEmpty()) {
+            try {
+                statusFilter = PurchaseOrder.PurchaseStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("无效的采购单状态: " + status);
+            }
+        }
+        LocalDate afterDate = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                afterDate = LocalDate.parse(parts[0]);
+                afterId = parts[1];
+            } catch (RuntimeException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        
+        // 多取一行判断是否还有下一页
+        List<PurchaseSummary> rows = purchaseOrderJdbcRepository.findSummaryPage(
+                storeId, statusFilter, from, to, afterDate, afterId, size + 1);
+        if (rows.size() <= size) {
+            return new PurchasePage(rows, null);
+        }
+        
+        List<PurchaseSummary> items = new ArrayList<>(rows.subList(0, size));
+        PurchaseSummary last = items.get(size - 1);
+        String next = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((last.getExpectedDate() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        return new PurchasePage(items, next);
+    }
+    
+    /**
+     * 采购单详情，不存在时返回 null；单据所属门店须在 storeAccess 允许的范围内
+     */
+    @Transactional(readOnly = true)
+    public PurchaseOrder getDetail(String id, Predicate<String> storeAccess) {
+        PurchaseOrder order = purchaseOrderRepository.findDetailById(id).orElse(null);
+        if (order == null) {
+            return null;
+        }
+        checkStore(order, storeAccess);
+        return withDetails(order);
     }
     
     @Transactional
     public PurchaseOrder create(String storeId, PurchaseRequest request) {
+        // 商品名称一次批量取出，不再逐行查库
+        Map<String, Product> products = productCatalog.getAll(
+                request.getItems().stream().map(PurchaseRequest.PurchaseItem::getProductId).toList());
+        PurchaseOrder order = buildOrder(storeId, request, products);
+        List<User.UserRole> chain = route(order);
+        
+        // 立即写入明细行，账龄按库中的明细汇总应付金额
+        PurchaseOrder saved = purchaseOrderRepository.saveAndFlush(order);
+        
+        afterRouting(saved, chain);
+        agingHistogram.purchaseChanged(saved);
+        auditService.record("创建采购单", saved.getId());
+        
+        return saved;
+    }
+    
+    /**
+     * 批量创建采购草稿（门店 -> 采购请求），草稿不入库、不进审批，提交后才按审批流处理。
+     * 所有草稿的商品一次取出，在同一事务中保存
+     */
+    @Transactional
+    public List<PurchaseOrder> createDrafts(Map<String, List<PurchaseRequest>> requestsByStore) {
+        Map<String, Product> products = productCatalog.getAll(requestsByStore.values().stream()
+                .flatMap(List::stream)
+                .flatMap(request -> request.getItems().stream())
+                .map(PurchaseRequest.PurchaseItem::getProductId)
+                .toList());
+        List<PurchaseOrder> drafts = new ArrayList<>();
+        requestsByStore.forEach((storeId, requests) -> requests.forEach(request -> {
+            PurchaseOrder order = buildOrder(storeId, request, products);
+            order.setStatus(PurchaseOrder.PurchaseStatus.DRAFT);
+            drafts.add(order);
+        }));
+        List<PurchaseOrder> saved = purchaseOrderRepository.saveAll(drafts);
+        auditService.recordAll("创建采购草稿", saved.stream().map(PurchaseOrder::getId).toList());
+        return saved;
+    }
+    
+    /**
+     * 提交草稿：与新建采购单一样按审批流确定审批链，不需要审批的直接入库
+     */
+    @Transactional
+    public PurchaseOrder submit(String id, Predicate<String> storeAccess) {
+        PurchaseOrder order = purchaseOrderRepository.findLockedById(id)
+                .orElseThrow(() -> new RuntimeException("采购单不存在"));
+        checkStore(order, storeAccess);
+        if (order.getStatus() != PurchaseOrder.PurchaseStatus.DRAFT) {
+            throw new RuntimeException("只有草稿状态的采购单可以提交");
+        }
+        List<User.UserRole> chain = route(order);
+        order.addTimelineEvent(Instant.now().toString());
+        afterRouting(order, chain);
+        auditService.record("提交采购草稿", id);
+        return withDetails(purchaseOrderRepository.save(order));
+    }
+    
+    /**
+     * 当前步骤的审批人通过审批；最后一步通过后单据转为待付款并入库
+     */
+    @Transactional
+    public PurchaseOrder approve(String id, User.UserRole role, Predicate<String> storeAccess) {
+        PurchaseOrder order = awaitingApproval(id, role, storeAccess);
+        order.setApprovalStep(order.getApprovalStep() + 1);
+        order.addTimelineEvent(Instant.now().toString());
+        User.UserRole next = order.currentApprover();
+        if (next == null) {
+            order.setStatus(PurchaseOrder.PurchaseStatus.PENDING);
+            applyToInventory(order);
+        }
+        approvalInbox.assignAfterCommit(id, next);
+        auditService.record("审批通过采购单", id);
+        return withDetails(purchaseOrderRepository.save(order));
+    }
+    
+    @Transactional
+    public PurchaseOrder reject(String id, User.UserRole role, Predicate<String> storeAccess) {
+        PurchaseOrder order = awaitingApproval(id, role, storeAccess);
+        order.setStatus(PurchaseOrder.PurchaseStatus.REJECTED);
+        order.addTimelineEvent(Instant.now().toString());
+        approvalInbox.assignAfterCommit(id, null);
+        auditService.record("驳回采购单", id);
+        return withDetails(purchaseOrderRepository.save(order));
+    }
+    
+    /**
+     * 角色的审批待办，按进入待办的先后排列，只包含 storeAccess 允许的门店的单据
+     */
+    @Transactional(readOnly = true)
+    public List<PurchaseOrder> approvalInbox(User.UserRole role, Predicate<String> storeAccess) {
+        List<String> ids = approvalInbox.pending(role);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, PurchaseOrder> orders = new HashMap<>();
+        purchaseOrderRepository.findAllById(ids).forEach(order -> orders.put(order.getId(), order));
+        return ids.stream()
+                .map(orders::get)
+                .filter(order -> order != null && storeAccess.test(order.getStoreId()))
+                .map(PurchaseService::withDetails)
+                .toList();
+    }
+    
+    private static void checkStore(PurchaseOrder order, Predicate<String> storeAccess) {
+        if (!storeAccess.test(order.getStoreId())) {
+            throw new StoreAccessDeniedException("无权访问该门店的采购单");
+        }
+    }
+    
+    private PurchaseOrder awaitingApproval(String id, User.UserRole role, Predicate<String> storeAccess) {
+        PurchaseOrder order = purchaseOrderRepository.findLockedById(id)
+                .orElseThrow(() -> new RuntimeException("采购单不存在"));
+        if (!storeAccess.test(order.getStoreId())) {
+            throw new ApprovalDeniedException("无权审批该门店的采购单");
+        }
+        if (order.getStatus() != PurchaseOrder.PurchaseStatus.AWAITING_APPROVAL) {
+            throw new RuntimeException("采购单不在审批中");
+        }
+        if (order.currentApprover() != role) {
+            throw new ApprovalDeniedException("当前审批人为 " + order.currentApprover());
+        }
+        return order;
+    }
+    
+    @Transactional
+    public PurchaseOrder updateStatus(String id, String status, Predicate<String> storeAccess) {
+        PurchaseOrder order = purchaseOrderRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("采购单不存在"));
+        checkStore(order, storeAccess);
+        if (!isPayment(order.getStatus())) {
+            throw new RuntimeException("采购单状态为 " + order.getStatus() + "，不能直接变更");
+        }
+        
+        order.setStatus(parseStatus(status));
+        auditService.record("采购单状态变更为 " + order.getStatus(), id);
+        return withDetails(purchaseOrderRepository.save(order));
+    }
+    
+    /**
+     * 按ID列表或门店内的预计到货日区间批量变更采购单状态，应付账龄随之更新
+     */
+    public BulkStatusResponse updateStatusAll(String storeId, BulkStatusRequest request) {
+        PurchaseOrder.PurchaseStatus status = parseStatus(request.getStatus());
+        // 审批中和已驳回的单据不参与付款状态变更，未指定原状态时只改另一种付款状态
+        PurchaseOrder.PurchaseStatus from = request.getFromStatus() != null ? parseStatus(request.getFromStatus())
+                : status == PurchaseOrder.PurchaseStatus.PAID ? PurchaseOrder.PurchaseStatus.PENDING
+                : PurchaseOrder.PurchaseStatus.PAID;
+        String fromStatus = from.name();
+        return bulkStatusUpdater.update(BULK_TARGET, storeId, request, fromStatus, status.name(), ids -> {
+            auditService.recordAll("采购单状态变更为 " + status, ids);
+            agingHistogram.purchasesChanged(ids);
+        });
+    }
+    
+    // 手工变更只在待付款和已付款之间进行，审批状态只能经审批接口改变
+    private static PurchaseOrder.PurchaseStatus parseStatus(String status) {
+        PurchaseOrder.PurchaseStatus parsed;
+        try {
+            parsed = PurchaseOrder.PurchaseStatus.valueOf(status.toUpperCase());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的采购单状态: " + status);
+        }
+        if (!isPayment(parsed)) {
+            throw new RuntimeException("采购单状态只能手工变更为 PENDING 或 PAID");
+        }
+        return parsed;
+    }
+    
+    private static boolean isPayment(PurchaseOrder.PurchaseStatus status) {
+        return status == PurchaseOrder.PurchaseStatus.PENDING || status == PurchaseOrder.PurchaseStatus.PAID;
+    }
+    
+    private PurchaseOrder buildOrder(String storeId, PurchaseRequest request, Map<String, Product> products) {
         PurchaseOrder order = new PurchaseOrder();
         order.setId("po-" + UUID.randomUUID().toString().substring(0, 8));
         order.setStoreId(storeId);
         order.setSupplierId(request.getSupplierId());
-        order.setStatus(PurchaseOrder.PurchaseStatus.PENDING);
         order.setExpectedDate(request.getEta() != null ? LocalDate.parse(request.getEta()) : LocalDate.now());
         order.setPaymentTermDays(7);
         
@@ -43,63 +299,83 @@ public class PurchaseService {
             line.setUnitCost(item.getUnitCost());
             line.setBatchRequired(item.isBatchRequired());
             
-            // 获取商品名称
-            productRepository.findById(item.getProductId())
-                    .ifPresent(product -> line.setFruit(product.getName()));
+            Product product = products.get(item.getProductId());
+            if (product != null) {
+                line.setFruit(product.getName());
+            }
             
             order.addLine(line);
         }
         
         // 添加时间线事件
         order.addTimelineEvent(Instant.now().toString());
-        
-        PurchaseOrder saved = purchaseOrderRepository.save(order);
-        
-        // 更新库存
-        applyToInventory(saved);
-        
-        return saved;
+        return order;
     }
     
-    @Transactional
-    public PurchaseOrder updateStatus(String id, String status) {
-        PurchaseOrder order = purchaseOrderRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("采购单不存在"));
-        
-        order.setStatus(PurchaseOrder.PurchaseStatus.valueOf(status.toUpperCase()));
-        return purchaseOrderRepository.save(order);
+    // 按编译好的审批阈值表确定审批链，需要审批的单据到货入库要等审批通过
+    private List<User.UserRole> route(PurchaseOrder order) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (PurchaseOrderLine line : order.getLines()) {
+            if (line.getQuantityKg() != null && line.getUnitCost() != null) {
+                total = total.add(line.getQuantityKg().multiply(line.getUnitCost()));
+            }
+        }
+        List<User.UserRole> chain = approvalEngine.chainFor(ApprovalEngine.PURCHASE, total);
+        if (chain.isEmpty()) {
+            order.setStatus(PurchaseOrder.PurchaseStatus.PENDING);
+        } else {
+            order.setStatus(PurchaseOrder.PurchaseStatus.AWAITING_APPROVAL);
+            order.setApprovalChain(String.join(",", chain.stream().map(Enum::name).toList()));
+            order.setApprovalStep(0);
+        }
+        return chain;
+    }
+    
+    private void afterRouting(PurchaseOrder order, List<User.UserRole> chain) {
+        if (chain.isEmpty()) {
+            // 更新库存
+            applyToInventory(order);
+        } else {
+            approvalInbox.assignAfterCommit(order.getId(), chain.get(0));
+        }
+    }
+    
+    // 集合是懒加载的，返回给控制器序列化前在事务内取出
+    private static PurchaseOrder withDetails(PurchaseOrder order) {
+        Hibernate.initialize(order.getLines());
+        Hibernate.initialize(order.getTimeline());
+        return order;
     }
     
     private void applyToInventory(PurchaseOrder order) {
         for (PurchaseOrderLine line : order.getLines()) {
             String fruit = line.getFruit() != null ? line.getFruit() : line.getProductId();
-            String inventoryId = "inv-" + order.getStoreId() + "-" + fruit;
+            String inventoryId = inventoryLedger.findInventoryId(order.getStoreId(), fruit)
+                    .orElseGet(() -> createInventory(order.getStoreId(), fruit, line));
             
-            Inventory inventory = inventoryRepository.findById(inventoryId)
-                    .orElseGet(() -> {
-                        Inventory newInv = new Inventory();
-                        newInv.setId(inventoryId);
-                        newInv.setStoreId(order.getStoreId());
-                        newInv.setFruit(fruit);
-                        newInv.setProductId(line.getProductId());
-                        newInv.setOnHandKg(BigDecimal.ZERO);
-                        newInv.setUnitCost(line.getUnitCost());
-                        newInv.setReorderLevelKg(new BigDecimal("80"));
-                        newInv.setUnitPrice(line.getUnitCost().multiply(new BigDecimal("1.5")));
-                        return newInv;
-                    });
-            
-            // 加权平均成本计算
-            BigDecimal totalKg = inventory.getOnHandKg().add(line.getQuantityKg());
-            BigDecimal totalCost = inventory.getOnHandKg().multiply(inventory.getUnitCost())
-                    .add(line.getQuantityKg().multiply(line.getUnitCost()));
-            
-            inventory.setOnHandKg(totalKg);
-            if (totalKg.compareTo(BigDecimal.ZERO) > 0) {
-                inventory.setUnitCost(totalCost.divide(totalKg, 2, BigDecimal.ROUND_HALF_UP));
+            // 一条 SQL 完成数量累加和加权平均成本重算；账本中有此行时按账本的实时数量加权
+            Optional<BigDecimal> onHand = inventoryLedger.onHand(inventoryId);
+            if (onHand.isPresent()) {
+                inventoryRepository.receiveStock(inventoryId, line.getQuantityKg(), line.getUnitCost(), onHand.get());
+            } else {
+                inventoryRepository.receiveStock(inventoryId, line.getQuantityKg(), line.getUnitCost());
             }
-            
-            inventoryRepository.save(inventory);
+            inventoryLedger.received(inventoryId, line.getQuantityKg());
         }
     }
+    
+    private String createInventory(String storeId, String fruit, PurchaseOrderLine line) {
+        Inventory inventory = new Inventory();
+        inventory.setId("inv-" + storeId + "-" + fruit);
+        inventory.setStoreId(storeId);
+        inventory.setFruit(fruit);
+        inventory.setProductId(line.getProductId());
+        inventory.setOnHandKg(BigDecimal.ZERO);
+        inventory.setUnitCost(line.getUnitCost());
+        inventory.setReorderLevelKg(new BigDecimal("80"));
+        // 商品有基准售价时沿用，否则按成本加价50%
+        BigDecimal priceBase = productCatalog.get(line.getProductId()).map(Product::getPriceBase).orElse(null);
+        inventory.setUnitPrice(priceBase != null ? priceBase : line.getUnitCost().multiply(new BigDecimal("1.5")));
+        return inventoryRepository.save(inventory).getId();
+    }
 }
@@ -0,0 +1,210 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.PurchaseRequest;
+import com.fruitshop.entity.Automation;
+import com.fruitshop.entity.Inventory;
+import com.fruitshop.entity.Partner;
+import com.fruitshop.entity.PurchaseOrder;
+import com.fruitshop.repository.AutomationRepository;
+import com.fruitshop.repository.InventoryRepository;
+import com.fruitshop.repository.PartnerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 自动补货 - 库存账本在扣减跨过预警线的那一刻登记库存行，定时任务只处理登记过的行，
+ * 工作量与跨线次数成正比，与库存总量无关。处理时确认仍在线下、没有未完成的补货单，
+ * 按 (门店, 供应商) 合并成采购草稿，经 PurchaseService 一次批量创建，并更新 auto-reorder 自动化的执行记录。
+ * 供应商取该商品在门店最近一张采购单的供应商，没有采购记录时取首选供应商
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReorderEngine {
+    
+    public static final String AUTOMATION_ID = "auto-reorder";
+    
+    // 已有这些状态的补货单时不再重复生成
+    private static final Set<String> OPEN_STATUSES = Set.of(
+            PurchaseOrder.PurchaseStatus.DRAFT.name(), PurchaseOrder.PurchaseStatus.AWAITING_APPROVAL.name());
+    
+    private final InventoryRepository inventoryRepository;
+    private final InventoryLedger inventoryLedger;
+    private final PartnerRepository partnerRepository;
+    private final AutomationRepository automationRepository;
+    private final PurchaseService purchaseService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    // 补到预警线的倍数
+    @Value("${fruitshop.reorder.target-multiple:2}")
+    private BigDecimal targetMultiple;
+    
+    private final Set<String> crossed = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 库存行跨过预警线，由库存账本在扣减生效后调用
+     */
+    public void crossed(String inventoryId) {
+        crossed.add(inventoryId);
+    }
+    
+    @Scheduled(fixedDelayString = "${fruitshop.reorder.interval-ms:5000}")
+    public synchronized void run() {
+        if (crossed.isEmpty()) {
+            return;
+        }
+        List<String> drained = new ArrayList<>();
+        for (String id : crossed) {
+            crossed.remove(id);
+            drained.add(id);
+        }
+        
+        Automation automation = automationRepository.findById(AUTOMATION_ID).orElse(null);
+        if (automation == null || !automation.isEnabled()) {
+            log.debug("自动补货未启用，忽略 {} 个跨线库存", drained.size());
+            return;
+        }
+        
+        try {
+            List<PurchaseOrder> drafts = transactionTemplate.execute(tx -> {
+                List<PurchaseOrder> created = createDrafts(drained);
+                automation.setLastRun(Instant.now().toString());
+                automation.setLastExecutionCount(created.size());
+                automationRepository.save(automation);
+                return created;
+            });
+            log.info("自动补货：{} 个跨线库存，生成 {} 张采购草稿", drained.size(), drafts.size());
+        } catch (RuntimeException e) {
+            // 跨线只上报一次，丢掉就再也不会补货，任何失败都放回下次重试
+            log.error("自动补货失败，{} 个跨线库存将在下次重试", drained.size(), e);
+            crossed.addAll(drained);
+        }
+    }
+    
+    private List<PurchaseOrder> createDrafts(List<String> inventoryIds) {
+        List<Inventory> below = new ArrayList<>();
+        // 数据库中的数量可能尚未回写，以账本为准；只记在本地，不能写回受管实体，
+        // 否则提交时脏检查会把账本值写入数据库，账本回写时同一增量再扣一次
+        Map<String, BigDecimal> onHandById = new HashMap<>();
+        for (Inventory inventory : inventoryRepository.findAllById(inventoryIds)) {
+            BigDecimal onHand = inventoryLedger.onHand(inventory.getId()).orElse(inventory.getOnHandKg());
+            // 期间已补货回到线上的跳过
+            if (inventory.getProductId() != null && inventory.getReorderLevelKg() != null
+                    && onHand.compareTo(inventory.getReorderLevelKg()) < 0) {
+                onHandById.put(inventory.getId(), onHand);
+                below.add(inventory);
+            }
+        }
+        if (below.isEmpty()) {
+            return List.of();
+        }
+        
+        Map<String, String> lastSuppliers = new HashMap<>();
+        Set<String> open = new HashSet<>();
+        loadHistory(below, lastSuppliers, open);
+        String fallback = null;
+        boolean fallbackLoaded = false;
+        
+        // 门店 -> 供应商 -> 采购请求
+        Map<String, Map<String, PurchaseRequest>> grouped = new LinkedHashMap<>();
+        for (Inventory inventory : below) {
+            String key = key(inventory.getStoreId(), inventory.getProductId());
+            if (open.contains(key)) {
+                continue;
+            }
+            String supplierId = lastSuppliers.get(key);
+            if (supplierId == null) {
+                if (!fallbackLoaded) {
+                    fallback = preferredSupplier();
+                    fallbackLoaded = true;
+                }
+                supplierId = fallback;
+            }
+            if (supplierId == null) {
+                log.warn("库存 {} 的商品没有采购记录，也没有可用的供应商，跳过自动补货", inventory.getId());
+                continue;
+            }
+            PurchaseRequest.PurchaseItem item = new PurchaseRequest.PurchaseItem();
+            item.setProductId(inventory.getProductId());
+            item.setQuantityKg(inventory.getReorderLevelKg().multiply(targetMultiple)
+                    .subtract(onHandById.get(inventory.getId())).setScale(2, RoundingMode.UP));
+            item.setUnitCost(inventory.getUnitCost());
+            grouped.computeIfAbsent(inventory.getStoreId(), store -> new LinkedHashMap<>())
+                    .computeIfAbsent(supplierId, this::newRequest)
+                    .getItems().add(item);
+        }
+        
+        Map<String, List<PurchaseRequest>> requests = new LinkedHashMap<>();
+        grouped.forEach((storeId, bySupplier) -> requests.put(storeId, new ArrayList<>(bySupplier.values())));
+        return requests.isEmpty() ? List.of() : purchaseService.createDrafts(requests);
+    }
+    
+    // 一条查询取出这些 (门店, 商品) 的采购历史：按预计到货日顺序遍历，最后一个供应商即最近的；
+    // 有草稿或审批中的采购单说明已经在补货
+    private void loadHistory(List<Inventory> below, Map<String, String> lastSuppliers, Set<String> open) {
+        Set<String> storeIds = new HashSet<>();
+        Set<String> productIds = new HashSet<>();
+        below.forEach(inventory -> {
+            storeIds.add(inventory.getStoreId());
+            productIds.add(inventory.getProductId());
+        });
+        List<Object> args = new ArrayList<>(productIds);
+        args.addAll(storeIds);
+        jdbcTemplate.query("SELECT po.store_id, l.product_id, po.supplier_id, po.status "
+                + "FROM purchase_order_lines l JOIN purchase_orders po ON po.id = l.purchase_order_id "
+                + "WHERE l.product_id IN (" + placeholders(productIds.size()) + ") "
+                + "AND po.store_id IN (" + placeholders(storeIds.size()) + ") "
+                + "AND po.status <> 'REJECTED' ORDER BY po.expected_date, po.id", rs -> {
+            String key = key(rs.getString(1), rs.getString(2));
+            if (rs.getString(3) != null) {
+                lastSuppliers.put(key, rs.getString(3));
+            }
+            if (OPEN_STATUSES.contains(rs.getString(4))) {
+                open.add(key);
+            }
+        }, args.toArray());
+    }
+    
+    private String preferredSupplier() {
+        return partnerRepository.findByType(Partner.PartnerType.SUPPLIER).stream()
+                .filter(partner -> "active".equals(partner.getStatus()))
+                .min(Comparator.comparing((Partner partner) -> !partner.isPreferred()).thenComparing(Partner::getId))
+                .map(Partner::getId)
+                .orElse(null);
+    }
+    
+    private PurchaseRequest newRequest(String supplierId) {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setSupplierId(supplierId);
+        request.setItems(new ArrayList<>());
+        return request;
+    }
+    
+    private static String key(String storeId, String productId) {
+        return storeId + "|" + productId;
+    }
+    
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
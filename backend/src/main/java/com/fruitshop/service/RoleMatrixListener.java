@@ -0,0 +1,26 @@
+package com.fruitshop.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 角色矩阵的 JPA 监听器，提交后通知 {@link PermissionEngine} 重新编译。
+ * 监听器随 EntityManagerFactory 创建，而引擎依赖仓库，所以延迟获取引擎以免循环依赖
+ */
+@Component
+@RequiredArgsConstructor
+public class RoleMatrixListener {
+    
+    private final ObjectProvider<PermissionEngine> permissionEngine;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        permissionEngine.getObject().reloadAfterCommit();
+    }
+}
@@ -1,41 +1,159 @@
 package com.fruitshop.service;
 
+import com.fruitshop.dto.BulkStatusRequest;
+import com.fruitshop.dto.BulkStatusResponse;
+import com.fruitshop.dto.SalesBatchResponse;
+import com.fruitshop.dto.SalesPage;
 import com.fruitshop.dto.SalesRequest;
-import com.fruitshop.entity.Inventory;
 import com.fruitshop.entity.PaymentMethod;
+import com.fruitshop.entity.Product;
 import com.fruitshop.entity.SalesOrder;
-import com.fruitshop.repository.InventoryRepository;
+import com.fruitshop.entity.WalletEntry;
+import com.fruitshop.exception.StoreAccessDeniedException;
+import com.fruitshop.repository.SalesOrderJdbcRepository;
 import com.fruitshop.repository.SalesOrderRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
 public class SalesService {
     
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final BulkStatusUpdater.Target BULK_TARGET =
+            new BulkStatusUpdater.Target("sales_orders", "销售单", "date", "channel");
+    
     private final SalesOrderRepository salesOrderRepository;
-    private final InventoryRepository inventoryRepository;
+    private final InventoryLedger inventoryLedger;
+    private final SalesOrderJdbcRepository salesOrderJdbcRepository;
+    private final AuditService auditService;
+    private final MemberAccrual memberAccrual;
+    private final MemberWallet memberWallet;
+    private final BulkStatusUpdater bulkStatusUpdater;
+    private final ProductCatalog productCatalog;
     
     public List<SalesOrder> listByStore(String storeId) {
         return salesOrderRepository.findByStoreIdOrderByDateDesc(storeId);
     }
     
+    /**
+     * keyset 分页：游标记录上一页最后一行的 (date, id)，翻页代价与历史总量无关
+     */
+    public SalesPage listPage(String storeId, LocalDate from, LocalDate to, String cursor, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        LocalDate afterDate = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                afterDate = LocalDate.parse(parts[0]);
+                afterId = parts[1];
+            } catch (RuntimeException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        
+        // 多取一行判断是否还有下一页
+        List<SalesOrder> rows = salesOrderRepository.findPageByStore(
+                storeId, from, to, afterDate, afterId, PageRequest.of(0, size + 1));
+        if (rows.size() <= size) {
+            return new SalesPage(rows, null);
+        }
+        
+        List<SalesOrder> items = new ArrayList<>(rows.subList(0, size));
+        SalesOrder last = items.get(size - 1);
+        String next = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((last.getDate() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        return new SalesPage(items, next);
+    }
+    
+    public void streamByStore(String storeId, LocalDate from, LocalDate to, Consumer<SalesOrder> consumer) {
+        salesOrderJdbcRepository.streamByStore(storeId, from, to, consumer);
+    }
+    
     @Transactional
     public SalesOrder create(String storeId, SalesRequest request) {
-        SalesOrder order = new SalesOrder();
+        SalesOrder order = buildOrder(storeId, request, productCatalog.getAll(Collections.singletonList(request.getFruit())));
         order.setId("so-" + UUID.randomUUID().toString().substring(0, 8));
+        payFromWallet(order);
+        
+        SalesOrder saved = salesOrderRepository.save(order);
+        
+        // 扣减库存
+        applyToInventory(saved);
+        memberAccrual.accrue(saved);
+        auditService.record("创建销售单", saved.getId());
+        
+        return saved;
+    }
+    
+    /**
+     * 批量导入POS缓存的销售单：逐行校验，合法行以 JDBC batch 写入，
+     * 库存扣减按 (门店, 水果) 汇总后每行只更新一次
+     */
+    @Transactional
+    public SalesBatchResponse createBatch(String storeId, List<SalesRequest> requests) {
+        SalesBatchResponse response = new SalesBatchResponse();
+        List<SalesOrder> orders = new ArrayList<>(requests.size());
+        Map<String, BigDecimal> totalsByFruit = new HashMap<>();
+        Map<String, Product> products = productCatalog.getAll(requests.stream().map(SalesRequest::getFruit).toList());
+        
+        for (int i = 0; i < requests.size(); i++) {
+            SalesOrder order;
+            try {
+                order = buildOrder(storeId, requests.get(i), products);
+                validate(order);
+                // 批量场景下8位ID碰撞概率不可忽略，这里加长
+                order.setId("so-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12));
+                payFromWallet(order);
+            } catch (RuntimeException e) {
+                response.getResults().add(new SalesBatchResponse.RowResult(i, null, false, e.getMessage()));
+                continue;
+            }
+            orders.add(order);
+            totalsByFruit.merge(order.getFruit(), order.getQuantityKg(), BigDecimal::add);
+            response.getResults().add(new SalesBatchResponse.RowResult(i, order.getId(), true, null));
+        }
+        
+        if (!orders.isEmpty()) {
+            salesOrderJdbcRepository.insertAll(orders);
+            totalsByFruit.forEach((fruit, qty) -> inventoryLedger.deduct(storeId, fruit, qty));
+            memberAccrual.accrueAll(orders);
+            auditService.recordAll("导入销售单", orders.stream().map(SalesOrder::getId).toList());
+        }
+        
+        response.setTotal(requests.size());
+        response.setSucceeded(orders.size());
+        response.setFailed(requests.size() - orders.size());
+        return response;
+    }
+    
+    private SalesOrder buildOrder(String storeId, SalesRequest request, Map<String, Product> products) {
+        SalesOrder order = new SalesOrder();
         order.setStoreId(storeId);
         order.setDate(request.getDate() != null ? LocalDate.parse(request.getDate()) : LocalDate.now());
         order.setCustomer(request.getCustomer());
         order.setCustomerId(request.getCustomerId());
         order.setChannel(request.getChannel());
-        order.setFruit(request.getFruit());
+        // POS 传商品ID时换成商品名称，与库存按名称记账一致；传名称时原样保留
+        Product product = products.get(request.getFruit());
+        order.setFruit(product != null ? product.getName() : request.getFruit());
         order.setQuantityKg(request.getQuantityKg());
         order.setUnitPrice(request.getUnitPrice());
         
@@ -50,30 +168,64 @@ public class SalesService {
         } else {
             order.setStatus(SalesOrder.SalesStatus.PENDING);
         }
-        
-        SalesOrder saved = salesOrderRepository.save(order);
-        
-        // 扣减库存
-        applyToInventory(saved);
-        
-        return saved;
+        return order;
+    }
+    
+    private void validate(SalesOrder order) {
+        if (order.getFruit() == null || order.getFruit().isBlank()) {
+            throw new RuntimeException("水果不能为空");
+        }
+        if (order.getQuantityKg() == null || order.getQuantityKg().signum() <= 0) {
+            throw new RuntimeException("销售数量必须大于0");
+        }
+        if (order.getUnitPrice() == null) {
+            throw new RuntimeException("单价不能为空");
+        }
+    }
+    
+    /**
+     * 余额、积分支付在当前事务内从会员钱包扣减，不足时该单失败；积分按1分抵0.01元折算
+     */
+    private void payFromWallet(SalesOrder order) {
+        PaymentMethod method = order.getPaymentMethod();
+        if (method != PaymentMethod.BALANCE && method != PaymentMethod.POINTS) {
+            return;
+        }
+        if (order.getCustomerId() == null || order.getCustomerId().isBlank()) {
+            throw new RuntimeException("余额或积分支付必须指定会员");
+        }
+        validate(order);
+        BigDecimal amount = order.getQuantityKg().multiply(order.getUnitPrice());
+        if (method == PaymentMethod.BALANCE) {
+            memberWallet.debit(order.getCustomerId(), WalletEntry.Account.BALANCE, amount, order.getId(), "余额支付");
+        } else {
+            memberWallet.debit(order.getCustomerId(), WalletEntry.Account.POINTS, MemberWallet.pointsFor(amount),
+                    order.getId(), "积分抵扣");
+        }
     }
     
     @Transactional
-    public SalesOrder settle(String id) {
+    public SalesOrder settle(String id, Predicate<String> storeAccess) {
         SalesOrder order = salesOrderRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("销售单不存在"));
+        if (!storeAccess.test(order.getStoreId())) {
+            throw new StoreAccessDeniedException("无权访问该门店的销售单");
+        }
         
         order.setStatus(SalesOrder.SalesStatus.SETTLED);
+        auditService.record("结算销售单", id);
         return salesOrderRepository.save(order);
     }
     
+    /**
+     * 日结批量结算：按ID列表或门店内的日期区间（可选渠道）把待结算的销售单改为已结算
+     */
+    public BulkStatusResponse settleAll(String storeId, BulkStatusRequest request) {
+        return bulkStatusUpdater.update(BULK_TARGET, storeId, request, null, SalesOrder.SalesStatus.SETTLED.name(),
+                ids -> auditService.recordAll("结算销售单", ids));
+    }
+    
     private void applyToInventory(SalesOrder order) {
-        inventoryRepository.findByStoreIdAndFruit(order.getStoreId(), order.getFruit())
-                .ifPresent(inventory -> {
-                    BigDecimal newQty = inventory.getOnHandKg().subtract(order.getQuantityKg());
-                    inventory.setOnHandKg(newQty.max(BigDecimal.ZERO));
-                    inventoryRepository.save(inventory);
-                });
+        inventoryLedger.deduct(order.getStoreId(), order.getFruit(), order.getQuantityKg());
     }
 }
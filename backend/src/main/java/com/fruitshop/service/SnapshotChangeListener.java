@@ -0,0 +1,71 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.*;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 快照实体的 JPA 监听器，把行的增删改登记到 {@link SnapshotChangeLog}。
+ * 绕过 JPA 的批量 SQL 需要自行调用 SnapshotChangeLog
+ */
+@Component
+@RequiredArgsConstructor
+public class SnapshotChangeListener {
+    
+    // 实体类型到快照分区名（与 EnterpriseSnapshot 字段名一致）
+    static final Map<Class<?>, String> SECTIONS = Map.ofEntries(
+            Map.entry(Product.class, "products"),
+            Map.entry(Partner.class, "partners"),
+            Map.entry(RoleMatrix.class, "roleMatrix"),
+            Map.entry(ApprovalFlow.class, "approvalFlows"),
+            Map.entry(Integration.class, "integrations"),
+            Map.entry(Automation.class, "automations"),
+            Map.entry(AuditLog.class, "auditLogs"),
+            Map.entry(SystemParameter.class, "parameters"),
+            Map.entry(Invoice.class, "invoices"),
+            Map.entry(Adjustment.class, "adjustments"),
+            Map.entry(ChannelConfig.class, "channelConfigs"),
+            Map.entry(AgingBucket.class, "aging"),
+            Map.entry(User.class, "users")
+    );
+    
+    private static final ClassValue<Field> ID_FIELDS = new ClassValue<>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            Field field = Arrays.stream(type.getDeclaredFields())
+                    .filter(candidate -> candidate.isAnnotationPresent(Id.class))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException(type.getName() + " 没有 @Id 字段"));
+            field.setAccessible(true);
+            return field;
+        }
+    };
+    
+    private final SnapshotChangeLog changeLog;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        String section = SECTIONS.get(entity.getClass());
+        if (section != null) {
+            changeLog.recordAfterCommit(section, idOf(entity));
+        }
+    }
+    
+    static String idOf(Object entity) {
+        try {
+            return String.valueOf(ID_FIELDS.get(entity.getClass()).get(entity));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
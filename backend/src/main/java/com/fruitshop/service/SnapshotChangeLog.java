@@ -0,0 +1,91 @@
+package com.fruitshop.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 企业快照变更日志 - 为快照各分区的行变化分配单调递增的版本号，
+ * 供客户端按 since 版本增量同步。只保留最近一段变更，更早的版本需要全量拉取
+ */
+@Component
+public class SnapshotChangeLog {
+    
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private final Map<String, Long> sectionVersions = new ConcurrentHashMap<>();
+    
+    // 以启动时刻（微秒）为起点，重启后的版本号总是大于上次运行分配过的版本
+    private final long baseVersion = System.currentTimeMillis() * 1000;
+    private long currentVersion = baseVersion;
+    private long floorVersion = baseVersion;
+    
+    @Value("${fruitshop.snapshot.change-log-capacity:50000}")
+    private int capacity;
+    
+    /**
+     * 事务提交后才分配版本，回滚的修改不会出现在增量中
+     */
+    public void recordAfterCommit(String section, String id) {
+        TransactionCallbacks.afterCommit(() -> record(section, id));
+    }
+    
+    public void recordAllAfterCommit(String section, Collection<String> ids) {
+        ids.forEach(id -> recordAfterCommit(section, id));
+    }
+    
+    public synchronized long currentVersion() {
+        return currentVersion;
+    }
+    
+    public long sectionVersion(String section) {
+        return sectionVersions.getOrDefault(section, baseVersion);
+    }
+    
+    /**
+     * 返回 since 之后各分区变化过的行ID；since 早于保留窗口或不属于本次运行时返回 null，调用方应改为全量
+     */
+    public synchronized Map<String, Set<String>> changesSince(long since) {
+        if (since < floorVersion || since > currentVersion) {
+            return null;
+        }
+        Map<String, Set<String>> result = new HashMap<>();
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+            Change change = it.next();
+            if (change.version <= since) {
+                break;
+            }
+            result.computeIfAbsent(change.section, key -> new LinkedHashSet<>()).add(change.id);
+        }
+        return result;
+    }
+    
+    private synchronized void record(String section, String id) {
+        long version = ++currentVersion;
+        changes.addLast(new Change(version, section, id));
+        sectionVersions.put(section, version);
+        while (changes.size() > capacity) {
+            floorVersion = changes.removeFirst().version;
+        }
+    }
+    
+    private static final class Change {
+        private final long version;
+        private final String section;
+        private final String id;
+        
+        private Change(long version, String section, String id) {
+            this.version = version;
+            this.section = section;
+            this.id = id;
+        }
+    }
+}
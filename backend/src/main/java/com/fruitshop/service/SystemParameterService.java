@@ -11,6 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class SystemParameterService {
     
     private final SystemParameterRepository parameterRepository;
+    private final AuditService auditService;
     
     @Transactional
     public SystemParameter updateParameter(String key, String value) {
@@ -24,6 +25,7 @@ public class SystemParameterService {
                 });
         
         param.setParamValue(value);
+        auditService.record("更新系统参数", key);
         return parameterRepository.save(param);
     }
 }
@@ -0,0 +1,149 @@
+package com.fruitshop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fruitshop.dto.TokenClaims;
+import com.fruitshop.entity.User;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 无状态令牌 - 声明 JSON 经 base64url 编码后以 HMAC-SHA256 签名，格式为 payload.signature。
+ * 校验只做验签、过期和注销检查，不访问数据库。注销集合只保存未过期的令牌ID，定时清理
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenService {
+    
+    public static final String ACCESS = "access";
+    public static final String REFRESH = "refresh";
+    
+    private static final String ALGORITHM = "HmacSHA256";
+    
+    private final ObjectMapper objectMapper;
+    
+    @Value("${fruitshop.auth.token-secret:}")
+    private String secret;
+    
+    @Value("${fruitshop.auth.access-token-ttl-seconds:900}")
+    private long accessTokenTtlSeconds;
+    
+    @Value("${fruitshop.auth.refresh-token-ttl-seconds:604800}")
+    private long refreshTokenTtlSeconds;
+    
+    // 已注销的令牌ID -> 过期时间，过期后即可移除
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private ThreadLocal<Mac> macs;
+    
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("未配置 fruitshop.auth.token-secret，使用随机密钥，重启后已签发的令牌全部失效");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        SecretKeySpec key = new SecretKeySpec(keyBytes, ALGORITHM);
+        // Mac 不是线程安全的，每个线程各持一个
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+    
+    public String issue(User user, String type) {
+        long ttl = ACCESS.equals(type) ? accessTokenTtlSeconds : refreshTokenTtlSeconds;
+        TokenClaims claims = new TokenClaims();
+        claims.setUsername(user.getUsername());
+        claims.setRole(user.getRole().name());
+        claims.setStoreIds(new ArrayList<>(user.getStoreIds()));
+        claims.setType(type);
+        claims.setTokenId(UUID.randomUUID().toString());
+        claims.setExpiresAt(Instant.now().getEpochSecond() + ttl);
+        
+        try {
+            String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(claims));
+            return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    public long getAccessTokenTtlSeconds() {
+        return accessTokenTtlSeconds;
+    }
+    
+    /**
+     * 校验签名、类型、有效期和注销状态，不通过时抛出带原因的异常
+     */
+    public TokenClaims verify(String token, String expectedType) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            throw new RuntimeException("令牌无效");
+        }
+        String payload = token.substring(0, dot);
+        TokenClaims claims;
+        try {
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                throw new RuntimeException("令牌无效");
+            }
+            claims = objectMapper.readValue(Base64.getUrlDecoder().decode(payload), TokenClaims.class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new RuntimeException("令牌无效");
+        }
+        
+        if (!expectedType.equals(claims.getType())) {
+            throw new RuntimeException("令牌无效");
+        }
+        if (claims.getExpiresAt() <= Instant.now().getEpochSecond()) {
+            throw new RuntimeException("令牌已过期");
+        }
+        if (revoked.containsKey(claims.getTokenId())) {
+            throw new RuntimeException("令牌已注销");
+        }
+        return claims;
+    }
+    
+    /**
+     * 注销令牌；返回 false 表示已被注销过。检查和写入是一次原子操作，
+     * 同一刷新令牌的并发请求只有一个能完成轮换
+     */
+    public boolean revoke(TokenClaims claims) {
+        return revoked.putIfAbsent(claims.getTokenId(), claims.getExpiresAt()) == null;
+    }
+    
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeRevoked() {
+        long now = Instant.now().getEpochSecond();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+    
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
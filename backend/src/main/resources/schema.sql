@@ -95,6 +95,7 @@ CREATE TABLE IF NOT EXISTS inventory (
     unit_cost DECIMAL(10,2),
     unit_price DECIMAL(10,2),
     reorder_level_kg DECIMAL(12,2) DEFAULT 80,
+    version BIGINT DEFAULT 0,
     FOREIGN KEY (store_id) REFERENCES stores(id) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
@@ -108,6 +109,8 @@ CREATE TABLE IF NOT EXISTS purchase_orders (
     status VARCHAR(20) DEFAULT 'PENDING',
     expected_date DATE,
     payment_term_days INT DEFAULT 7,
+    approval_chain VARCHAR(255),
+    approval_step INT DEFAULT 0,
     FOREIGN KEY (store_id) REFERENCES stores(id) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
@@ -205,7 +208,8 @@ CREATE TABLE IF NOT EXISTS system_parameters (
 -- =============================================
 CREATE TABLE IF NOT EXISTS role_matrix (
     role VARCHAR(30) PRIMARY KEY,
-    label VARCHAR(50)
+    label VARCHAR(50),
+    version BIGINT DEFAULT 0
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- 角色权限关联
@@ -278,14 +282,12 @@ CREATE TABLE IF NOT EXISTS automations (
 -- =============================================
 CREATE TABLE IF NOT EXISTS audit_logs (
     id VARCHAR(50) PRIMARY KEY,
-    actor VARCHAR(100),
+    actor VARCHAR(255),
     action VARCHAR(255),
-    entity VARCHAR(100),
-    entity_id VARCHAR(50),
-    old_value TEXT,
-    new_value TEXT,
-    timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
-    ip VARCHAR(50)
+    entity VARCHAR(255),
+    at DATETIME(6) NOT NULL,
+    log_date DATE NOT NULL,
+    ip VARCHAR(255)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- =============================================
@@ -315,13 +317,39 @@ CREATE TABLE IF NOT EXISTS aging_buckets (
     payables DECIMAL(12,2)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- =============================================
+-- 19. 会员钱包流水表（只追加）
+-- =============================================
+CREATE TABLE IF NOT EXISTS wallet_ledger (
+    id VARCHAR(50) PRIMARY KEY,
+    member_id VARCHAR(50) NOT NULL,
+    account VARCHAR(20) NOT NULL,
+    amount DECIMAL(12,2) NOT NULL,
+    reference VARCHAR(50),
+    reason VARCHAR(50),
+    at DATETIME(6) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- =============================================
 -- 索引优化
 -- =============================================
+CREATE INDEX idx_product_barcode ON products(barcode);
 CREATE INDEX idx_inventory_store ON inventory(store_id);
 CREATE INDEX idx_purchase_store ON purchase_orders(store_id);
+CREATE INDEX idx_purchase_store_expected_id ON purchase_orders(store_id, expected_date, id);
+CREATE INDEX idx_purchase_status ON purchase_orders(status);
+CREATE INDEX idx_purchase_line_product ON purchase_order_lines(product_id);
 CREATE INDEX idx_sales_store ON sales_orders(store_id);
 CREATE INDEX idx_sales_date ON sales_orders(date);
+CREATE INDEX idx_sales_store_date_id ON sales_orders(store_id, date, id);
+CREATE INDEX idx_sales_customer ON sales_orders(customer_id);
 CREATE INDEX idx_invoice_store ON invoices(store_id);
+CREATE INDEX idx_invoice_status_due ON invoices(status, due_date);
+CREATE INDEX idx_invoice_sales_order ON invoices(sales_order_id);
+CREATE INDEX idx_invoice_store_due_id ON invoices(store_id, due_date, id);
 CREATE INDEX idx_member_phone ON members(phone);
-CREATE INDEX idx_audit_timestamp ON audit_logs(timestamp);
+CREATE INDEX idx_audit_date_at ON audit_logs(log_date, at, id);
+CREATE INDEX idx_audit_actor_date ON audit_logs(actor, log_date, at);
+CREATE INDEX idx_audit_action_date ON audit_logs(action, log_date, at);
+CREATE INDEX idx_audit_entity_date ON audit_logs(entity, log_date, at);
+CREATE INDEX idx_wallet_member_at ON wallet_ledger(member_id, at);
@@ -0,0 +1,92 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.AdjustmentRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"dev", "test"})
+class InventoryLedgerTest {
+    
+    @Autowired
+    private InventoryLedger inventoryLedger;
+    
+    @Autowired
+    private InventoryService inventoryService;
+    
+    @Autowired
+    private ReorderEngine reorderEngine;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void adjustmentStaysInLedgerUntilFlush() {
+        String id = "inv-store-1-grape";
+        
+        inventoryService.createAdjustment(id, adjustment(-30), storeId -> true);
+        
+        assertThat(inventoryLedger.onHand(id))
+                .hasValueSatisfying(onHand -> assertThat(onHand).isEqualByComparingTo("70"));
+        assertThat((BigDecimal) row(id).get("on_hand_kg")).isEqualByComparingTo("100");
+        
+        inventoryLedger.flush();
+        
+        Map<String, Object> row = row(id);
+        assertThat((BigDecimal) row.get("on_hand_kg")).isEqualByComparingTo("70");
+        // 回写只执行条件 UPDATE，不经过受管实体
+        assertThat(((Number) row.get("version")).longValue()).isZero();
+    }
+    
+    @Test
+    void crossingReorderLevelCreatesDraftWithoutDeductingTwice() {
+        String id = "inv-store-1-mango";
+        
+        // 80kg，预警线 40kg，扣到 30kg 跨线
+        inventoryService.createAdjustment(id, adjustment(-50), storeId -> true);
+        reorderEngine.run();
+        
+        List<Map<String, Object>> drafts = jdbcTemplate.queryForList("SELECT l.quantity_kg FROM purchase_orders po "
+                + "JOIN purchase_order_lines l ON l.purchase_order_id = po.id "
+                + "WHERE po.store_id = ? AND po.status = 'DRAFT' AND l.product_id = ?", "store-1", "mango");
+        assertThat(drafts).hasSize(1);
+        // 补到预警线的 2 倍：40 × 2 - 30
+        assertThat((BigDecimal) drafts.get(0).get("quantity_kg")).isEqualByComparingTo("50");
+        
+        // 补货只读账本，数据库在回写前保持原值，回写后只扣一次
+        assertThat((BigDecimal) row(id).get("on_hand_kg")).isEqualByComparingTo("80");
+        inventoryLedger.flush();
+        Map<String, Object> row = row(id);
+        assertThat((BigDecimal) row.get("on_hand_kg")).isEqualByComparingTo("30");
+        assertThat(((Number) row.get("version")).longValue()).isZero();
+        
+        // 已有未完成的草稿，继续跨线不再重复生成
+        inventoryService.createAdjustment(id, adjustment(20), storeId -> true);
+        inventoryService.createAdjustment(id, adjustment(-20), storeId -> true);
+        reorderEngine.run();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM purchase_orders po "
+                + "JOIN purchase_order_lines l ON l.purchase_order_id = po.id "
+                + "WHERE po.store_id = ? AND po.status = 'DRAFT' AND l.product_id = ?",
+                Integer.class, "store-1", "mango")).isEqualTo(1);
+    }
+    
+    private Map<String, Object> row(String id) {
+        return jdbcTemplate.queryForMap("SELECT on_hand_kg, version FROM inventory WHERE id = ?", id);
+    }
+    
+    private static AdjustmentRequest adjustment(double deltaKg) {
+        AdjustmentRequest request = new AdjustmentRequest();
+        request.setDeltaKg(BigDecimal.valueOf(deltaKg));
+        request.setReason("测试");
+        return request;
+    }
+}
@@ -0,0 +1,77 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Invoice;
+import com.fruitshop.repository.InvoiceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"dev", "test"})
+class InvoiceOverdueQueueTest {
+    
+    @Autowired
+    private InvoiceOverdueQueue overdueQueue;
+    
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+    
+    @Autowired
+    private SnapshotChangeLog changeLog;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void transitionsOnlyInvoicesStillPendingAndPastDue() {
+        LocalDate today = LocalDate.now();
+        invoiceRepository.saveAll(List.of(
+                invoice("inv-test-due", today.minusDays(1)),
+                invoice("inv-test-paid", today.minusDays(1)),
+                invoice("inv-test-extended", today.minusDays(2)),
+                invoice("inv-test-future", today.plusDays(1))));
+        
+        // 绕过 JPA 的修改不会通知队列：一张已付款，一张到期日已延后
+        jdbcTemplate.update("UPDATE invoices SET status = 'PAID' WHERE id = ?", "inv-test-paid");
+        jdbcTemplate.update("UPDATE invoices SET due_date = ? WHERE id = ?",
+                Date.valueOf(today.plusDays(7)), "inv-test-extended");
+        long version = changeLog.currentVersion();
+        
+        assertThat(overdueQueue.transitionDue()).isEqualTo(1);
+        
+        assertThat(status("inv-test-due")).isEqualTo("OVERDUE");
+        assertThat(status("inv-test-paid")).isEqualTo("PAID");
+        assertThat(status("inv-test-extended")).isEqualTo("PENDING");
+        assertThat(status("inv-test-future")).isEqualTo("PENDING");
+        // 只有实际改动的发票进入快照变更
+        Map<String, Set<String>> changes = changeLog.changesSince(version);
+        assertThat(changes.get("invoices")).containsExactly("inv-test-due");
+        // 已处理的到期槽出队，再次执行没有可处理的发票
+        assertThat(overdueQueue.transitionDue()).isZero();
+    }
+    
+    private String status(String id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM invoices WHERE id = ?", String.class, id);
+    }
+    
+    private static Invoice invoice(String id, LocalDate dueDate) {
+        Invoice invoice = new Invoice();
+        invoice.setId(id);
+        invoice.setStoreId("store-1");
+        invoice.setDueDate(dueDate);
+        invoice.setAmount(new BigDecimal("100.00"));
+        invoice.setStatus(Invoice.InvoiceStatus.PENDING);
+        return invoice;
+    }
+}
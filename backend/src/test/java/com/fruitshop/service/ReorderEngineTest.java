@@ -0,0 +1,128 @@
+package com.fruitshop.service;
+
+import com.fruitshop.entity.Inventory;
+import com.fruitshop.entity.PurchaseOrder;
+import com.fruitshop.entity.PurchaseOrderLine;
+import com.fruitshop.repository.InventoryRepository;
+import com.fruitshop.repository.PurchaseOrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"dev", "test"})
+class ReorderEngineTest {
+    
+    @Autowired
+    private ReorderEngine reorderEngine;
+    
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void mergesCrossedRowsIntoOneDraftPerStoreAndSupplier() {
+        String storeId = "store-reorder-merge";
+        crossed(storeId, "apple", "pear", "peach");
+        // 桃子上次从 sup-2 采购，其余没有采购记录，取首选供应商 sup-1
+        PurchaseOrder history = new PurchaseOrder();
+        history.setId("po-reorder-history");
+        history.setStoreId(storeId);
+        history.setSupplierId("sup-2");
+        history.setStatus(PurchaseOrder.PurchaseStatus.PAID);
+        history.setExpectedDate(LocalDate.now().minusDays(7));
+        PurchaseOrderLine line = new PurchaseOrderLine();
+        line.setProductId("peach");
+        line.setQuantityKg(new BigDecimal("50"));
+        line.setUnitCost(new BigDecimal("8"));
+        history.addLine(line);
+        purchaseOrderRepository.save(history);
+        
+        reorderEngine.run();
+        
+        assertThat(drafts(storeId)).isEqualTo(Map.of(
+                "sup-1", List.of("apple", "pear"),
+                "sup-2", List.of("peach")));
+    }
+    
+    @Test
+    void openDraftSuppressesDuplicate() {
+        String storeId = "store-reorder-open";
+        crossed(storeId, "orange");
+        reorderEngine.run();
+        assertThat(drafts(storeId)).isEqualTo(Map.of("sup-1", List.of("orange")));
+        
+        // 草稿未处理前再次跨线不重复生成
+        reorderEngine.crossed(inventoryId(storeId, "orange"));
+        reorderEngine.run();
+        assertThat(drafts(storeId)).isEqualTo(Map.of("sup-1", List.of("orange")));
+    }
+    
+    @Test
+    void failedRunIsRetried() {
+        String storeId = "store-reorder-retry";
+        crossed(storeId, "banana");
+        
+        // 模拟数据库故障：查不到采购历史，整次补货回滚
+        jdbcTemplate.execute("ALTER TABLE purchase_order_lines RENAME TO purchase_order_lines_offline");
+        try {
+            reorderEngine.run();
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE purchase_order_lines_offline RENAME TO purchase_order_lines");
+        }
+        assertThat(drafts(storeId)).isEmpty();
+        
+        // 跨线不会再上报，下次执行必须补上
+        reorderEngine.run();
+        assertThat(drafts(storeId)).isEqualTo(Map.of("sup-1", List.of("banana")));
+    }
+    
+    // 在门店下建好低于预警线的库存行并登记跨线
+    private void crossed(String storeId, String... productIds) {
+        for (String productId : productIds) {
+            Inventory inventory = new Inventory();
+            inventory.setId(inventoryId(storeId, productId));
+            inventory.setStoreId(storeId);
+            inventory.setProductId(productId);
+            inventory.setFruit(productId);
+            inventory.setOnHandKg(new BigDecimal("10"));
+            inventory.setUnitCost(new BigDecimal("5"));
+            inventory.setUnitPrice(new BigDecimal("8"));
+            inventory.setReorderLevelKg(new BigDecimal("40"));
+            inventoryRepository.save(inventory);
+            reorderEngine.crossed(inventory.getId());
+        }
+    }
+    
+    // 供应商 -> 草稿中的商品，每个供应商只能有一张草稿
+    private Map<String, List<String>> drafts(String storeId) {
+        Map<String, List<String>> drafts = new TreeMap<>();
+        List<Map<String, Object>> orders = jdbcTemplate.queryForList(
+                "SELECT id, supplier_id FROM purchase_orders WHERE store_id = ? AND status = 'DRAFT'", storeId);
+        for (Map<String, Object> order : orders) {
+            List<String> products = jdbcTemplate.queryForList("SELECT product_id FROM purchase_order_lines "
+                    + "WHERE purchase_order_id = ? ORDER BY product_id", String.class, order.get("id"));
+            assertThat(drafts.put((String) order.get("supplier_id"), products)).isNull();
+        }
+        return drafts;
+    }
+    
+    private static String inventoryId(String storeId, String productId) {
+        return "inv-" + storeId + "-" + productId;
+    }
+}
@@ -0,0 +1,87 @@
+package com.fruitshop.service;
+
+import com.fruitshop.dto.LoginRequest;
+import com.fruitshop.dto.LoginResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles({"dev", "test"})
+class TokenServiceTest {
+    
+    @Autowired
+    private AuthService authService;
+    
+    @Autowired
+    private TokenService tokenService;
+    
+    @Test
+    void refreshRotatesRefreshToken() {
+        LoginResponse login = login();
+        
+        LoginResponse refreshed = authService.refresh(login.getRefreshToken());
+        
+        assertThat(refreshed.getRefreshToken()).isNotEqualTo(login.getRefreshToken());
+        assertThat(tokenService.verify(refreshed.getToken(), TokenService.ACCESS).getUsername()).isEqualTo("cashier");
+        // 旧的刷新令牌已注销，新的仍可使用
+        assertThatThrownBy(() -> authService.refresh(login.getRefreshToken())).hasMessage("令牌已注销");
+        assertThat(authService.refresh(refreshed.getRefreshToken()).getToken()).isNotBlank();
+    }
+    
+    @Test
+    void concurrentRefreshWithSameTokenSucceedsOnce() throws Exception {
+        String refreshToken = login().getRefreshToken();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        authService.refresh(refreshToken);
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                succeeded += result.get() ? 1 : 0;
+            }
+            assertThat(succeeded).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void accessTokenCannotBeUsedToRefresh() {
+        LoginResponse login = login();
+        
+        assertThatThrownBy(() -> authService.refresh(login.getToken())).hasMessage("令牌无效");
+    }
+    
+    private LoginResponse login() {
+        LoginRequest request = new LoginRequest();
+        request.setUsername("cashier");
+        request.setPassword("cashier123");
+        return authService.login(request);
+    }
+}
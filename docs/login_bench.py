@@ -0,0 +1,90 @@
+"""
+交班集中登录压测：先单独压收银查询接口取基线，再在持续的收银查询下发起 N 个并发登录，
+输出登录耗时（含 503 后按 Retry-After 重试的时间）和同期收银接口的 p50/p99
+运行: python login_bench.py [并发登录数] [--host localhost:8080]
+"""
+
+import argparse
+import http.client
+import json
+import threading
+import time
+
+
+def request(host, method, path, body=None):
+    conn = http.client.HTTPConnection(host, timeout=60)
+    start = time.perf_counter()
+    conn.request(method, path, body=json.dumps(body) if body else None,
+                 headers={"Content-Type": "application/json"})
+    response = conn.getresponse()
+    response.read()
+    conn.close()
+    return response.status, (time.perf_counter() - start) * 1000
+
+
+def percentile(values, p):
+    values = sorted(values)
+    return values[min(len(values) - 1, int(len(values) * p))] if values else 0
+
+
+def sales_traffic(host, stop, samples):
+    while not stop.is_set():
+        samples.append(request(host, "GET", "/stores/store-1/sales?page=0&size=20")[1])
+
+
+def start_sales(host, threads):
+    stop, samples = threading.Event(), []
+    workers = [threading.Thread(target=sales_traffic, args=(host, stop, samples)) for _ in range(threads)]
+    for worker in workers:
+        worker.start()
+    return stop, samples, workers
+
+
+def login(host, latencies, statuses, lock):
+    start = time.perf_counter()
+    while True:
+        status, _ = request(host, "POST", "/auth/login", {"username": "cashier", "password": "cashier123"})
+        with lock:
+            statuses[status] = statuses.get(status, 0) + 1
+        if status != 503:
+            break
+        time.sleep(1)
+    if status == 200:
+        with lock:
+            latencies.append((time.perf_counter() - start) * 1000)
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("logins", type=int, nargs="?", default=100)
+    parser.add_argument("--host", default="localhost:8080")
+    parser.add_argument("--sales-threads", type=int, default=4)
+    parser.add_argument("--baseline-seconds", type=int, default=10)
+    args = parser.parse_args()
+
+    stop, samples, workers = start_sales(args.host, args.sales_threads)
+    time.sleep(args.baseline_seconds)
+    stop.set()
+    for worker in workers:
+        worker.join()
+    print(f"收银接口基线: n={len(samples)} p50={percentile(samples, .5):.1f}ms p99={percentile(samples, .99):.1f}ms")
+
+    stop, samples, workers = start_sales(args.host, args.sales_threads)
+    latencies, statuses, lock = [], {}, threading.Lock()
+    logins = [threading.Thread(target=login, args=(args.host, latencies, statuses, lock)) for _ in range(args.logins)]
+    start = time.perf_counter()
+    for thread in logins:
+        thread.start()
+    for thread in logins:
+        thread.join()
+    elapsed = time.perf_counter() - start
+    stop.set()
+    for worker in workers:
+        worker.join()
+    print(f"{args.logins} 个并发登录: 状态码={statuses} p50={percentile(latencies, .5):.0f}ms "
+          f"p99={percentile(latencies, .99):.0f}ms 总耗时={elapsed:.1f}s")
+    print(f"登录期间收银接口: n={len(samples)} p50={percentile(samples, .5):.1f}ms p99={percentile(samples, .99):.1f}ms")
+
+
+if __name__ == "__main__":
+    main()